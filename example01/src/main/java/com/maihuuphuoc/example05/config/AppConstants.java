@@ -5,6 +5,7 @@ public class AppConstants {
     public static final String PAGE_SIZE = "2";
     public static final String SORT_CATEGORIES_BY = "categoryId";
     public static final String SORT_PRODUCTS_BY = "productId";
+    public static final String SORT_SEARCH_BY = "relevance";
     public static final String SORT_USERS_BY = "userId";
     public static final String SORT_ORDERS_BY = "totalAmount";
     public static final String SORT_DIR = "asc";
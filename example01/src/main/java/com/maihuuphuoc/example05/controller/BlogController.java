@@ -5,8 +5,6 @@ import com.maihuuphuoc.example05.payloads.BlogResponse;
 import com.maihuuphuoc.example05.service.BlogService;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -14,8 +12,10 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
 
 @RestController
 @RequestMapping("/api")
@@ -26,6 +26,9 @@ public class BlogController {
     @Autowired
     private BlogService blogService;
 
+    @Autowired
+    private ImageDelivery imageDelivery;
+
     @PostMapping(value = "/admin/blogs", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<BlogDTO> createBlogWithoutImage(
             @RequestBody BlogDTO blogDTO,
@@ -69,12 +72,9 @@ public class BlogController {
     }
 
     @GetMapping("/public/images/{fileName}")
-    public ResponseEntity<InputStreamResource> getImage(@PathVariable String fileName) throws FileNotFoundException {
-        InputStream imageStream = blogService.getBlogImage(fileName);
-        HttpHeaders headers = new HttpHeaders();
-        String contentType = fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") ? "image/jpeg" : "image/png";
-        headers.setContentType(MediaType.parseMediaType(contentType));
-        headers.setContentDispositionFormData("inline", fileName);
-        return new ResponseEntity<>(new InputStreamResource(imageStream), headers, HttpStatus.OK);
+    public void getImage(@PathVariable String fileName,
+            @RequestParam(name = "size", required = false) String size,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        imageDelivery.send(blogService.getBlogImage(fileName, size), request, response);
     }
 }
\ No newline at end of file
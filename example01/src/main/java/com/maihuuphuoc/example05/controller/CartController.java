@@ -1,11 +1,14 @@
 package com.maihuuphuoc.example05.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -13,12 +16,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.maihuuphuoc.example05.config.AppConstants;
 import com.maihuuphuoc.example05.exceptions.APIException;
 import com.maihuuphuoc.example05.exceptions.ResourceNotFoundException;
 import com.maihuuphuoc.example05.payloads.CartDTO;
+import com.maihuuphuoc.example05.payloads.CartLineDTO;
 import com.maihuuphuoc.example05.service.CartService;
 
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -32,6 +42,9 @@ public class CartController {
     @Autowired
     private CartService cartService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @PostMapping("/public/carts/{cartId}/products/{productId}/quantity/{quantity}")
     public ResponseEntity<?> addProductToCart(@PathVariable Long cartId, @PathVariable Long productId,
             @PathVariable Integer quantity) {
@@ -44,8 +57,12 @@ public class CartController {
     }
 
     @GetMapping("/admin/carts")
-    public ResponseEntity<Map<String, List<CartDTO>>> getCarts() {
-        List<CartDTO> cartDTOs = cartService.getAllCarts();
+    public ResponseEntity<Map<String, List<CartDTO>>> getCarts(
+            @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
+            @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        List<CartDTO> cartDTOs = pageSize != null
+                ? cartService.getCarts(pageNumber, pageSize)
+                : cartService.getAllCarts();
 
         Map<String, List<CartDTO>> response = new HashMap<>();
         response.put("content", cartDTOs);
@@ -53,6 +70,20 @@ public class CartController {
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    // Every cart as one JSON document per line, written while the rows are read
+    @GetMapping(value = "/admin/carts", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCarts() {
+        StreamingResponseBody body = out -> cartService.streamAllCarts(cartDTO -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(cartDTO));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/public/users/{emailId}/carts/{cartId}")
     public ResponseEntity<CartDTO> getCartById(@PathVariable String emailId, @PathVariable Long cartId) {
         CartDTO cartDTO = cartService.getCart(emailId, cartId);
@@ -71,6 +102,17 @@ public class CartController {
         }
     }
 
+    // Sets the quantity of each listed product in one go; a quantity of 0 removes the line
+    @PutMapping("/public/carts/{cartId}/products")
+    public ResponseEntity<?> updateCartLines(@PathVariable Long cartId, @RequestBody List<CartLineDTO> lines) {
+        try {
+            CartDTO cartDTO = cartService.updateCartLines(cartId, lines);
+            return new ResponseEntity<>(cartDTO, HttpStatus.OK);
+        } catch (ResourceNotFoundException | APIException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @DeleteMapping("/public/carts/{cartId}/product/{productId}")
     public ResponseEntity<String> deleteProductFromCart(@PathVariable Long cartId, @PathVariable Long productId) {
         String status = cartService.deleteProductFromCart(cartId, productId);
@@ -0,0 +1,140 @@
+package com.maihuuphuoc.example05.controller;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Writes an image file to the response without copying it through the heap.
+ * Under Tomcat the file is handed to the connector's sendfile, elsewhere it is
+ * sent with {@link FileChannel#transferTo}. Answers conditional requests with
+ * 304 and a single byte range with 206; multi-range requests get the whole
+ * file. Uploads and their resized variants are named after their content, or
+ * a random UUID before the content-addressed store, and never change, so they
+ * are cached for a year; other files, such as default.png, are revalidated
+ * every time.
+ */
+@Component
+public class ImageDelivery {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final Pattern UPLOADED_NAME = Pattern
+            .compile("([0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})"
+                    + "(-thumb|-card|-full)?(\\.\\w+)?");
+
+    private static final String IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+            .getHeaderValue();
+    private static final String REVALIDATE = CacheControl.noCache().cachePublic().getHeaderValue();
+
+    public void send(Path file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        String fileName = file.getFileName().toString();
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                UPLOADED_NAME.matcher(fileName).matches() && isRequestedSize(request, fileName)
+                        ? IMMUTABLE
+                        : REVALIDATE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Sets ETag and Last-Modified, and the 304 or 412 status when the request's validators say so
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+        response.setContentType(MediaTypeFactory.getMediaType(fileName)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.inline().filename(fileName).build().toString());
+
+        long start = 0;
+        long end = length;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && rangeStillValid(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                // A malformed Range header is ignored
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length) + 1;
+                if (start >= length) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || start == end) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file itself once the request returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            for (long position = start; position < end;) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    // The original stands in for a variant that is not written yet and must not be cached under the variant's URL
+    private static boolean isRequestedSize(HttpServletRequest request, String fileName) {
+        String size = request.getParameter("size");
+        return size == null || size.isBlank() || size.equalsIgnoreCase("original")
+                || fileName.contains("-" + size.toLowerCase(Locale.ROOT) + ".");
+    }
+
+    // If-Range: the range only applies while the file is still the one the client has a part of
+    private static boolean rangeStillValid(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
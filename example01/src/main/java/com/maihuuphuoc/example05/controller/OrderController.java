@@ -1,5 +1,6 @@
 package com.maihuuphuoc.example05.controller;
 
+import java.net.URI;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,14 +11,17 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.maihuuphuoc.example05.config.AppConstants;
 import com.maihuuphuoc.example05.payloads.OrderDTO;
+import com.maihuuphuoc.example05.payloads.OrderRequestDTO;
 import com.maihuuphuoc.example05.payloads.OrderResponse;
 import com.maihuuphuoc.example05.service.OrderService;
+import com.maihuuphuoc.example05.service.impl.OrderQueue;
 
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 
@@ -27,6 +31,8 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 public class OrderController {
     @Autowired
     public OrderService orderService;
+    @Autowired
+    private OrderQueue orderQueue;
 
     @PostMapping("/public/users/{emailId}/carts/{cartId}/payments/{paymentMethod}/order")
     public ResponseEntity<OrderDTO> orderProducts(@PathVariable String emailId, @PathVariable Long cartId,
@@ -35,12 +41,36 @@ public class OrderController {
         return new ResponseEntity<OrderDTO>(order, HttpStatus.CREATED);
     }
 
+    @PostMapping("/public/users/{emailId}/carts/{cartId}/payments/{paymentMethod}/order/async")
+    public ResponseEntity<OrderRequestDTO> orderProductsAsync(@PathVariable String emailId,
+            @PathVariable Long cartId, @PathVariable String paymentMethod,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        OrderRequestDTO request = orderQueue.submit(emailId, cartId, paymentMethod, idempotencyKey);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/public/users/" + emailId + "/orders/requests/" + request.getRequestId()))
+                .body(request);
+    }
+
+    @GetMapping("/public/users/{emailId}/orders/requests/{requestId}")
+    public ResponseEntity<OrderRequestDTO> getOrderRequest(@PathVariable String emailId,
+            @PathVariable String requestId) {
+        OrderRequestDTO request = orderQueue.getRequest(emailId, requestId);
+        return new ResponseEntity<>(request, HttpStatus.OK);
+    }
+
     @GetMapping("/admin/orders")
     public ResponseEntity<OrderResponse> getAllOrders(
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_ORDERS_BY, required = false) String sortBy,
-            @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
+            @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withCount", defaultValue = "false", required = false) boolean withCount) {
+        if (cursor != null) {
+            OrderResponse orderResponse = orderService.getAllOrdersByCursor(cursor, pageSize, sortBy, sortOrder,
+                    withCount);
+            return new ResponseEntity<OrderResponse>(orderResponse, HttpStatus.OK);
+        }
         OrderResponse orderResponse = orderService.getAllOrders(pageNumber, pageSize, sortBy, sortOrder);
         return new ResponseEntity<OrderResponse>(orderResponse, HttpStatus.OK);
     }
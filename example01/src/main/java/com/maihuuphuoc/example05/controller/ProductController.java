@@ -1,11 +1,17 @@
 package com.maihuuphuoc.example05.controller;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -20,14 +26,23 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.maihuuphuoc.example05.config.AppConstants;
 import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.payloads.CategoryDTO;
 import com.maihuuphuoc.example05.payloads.ProductDTO;
+import com.maihuuphuoc.example05.payloads.ProductImportReport;
 import com.maihuuphuoc.example05.payloads.ProductResponse;
+import com.maihuuphuoc.example05.payloads.SuggestionDTO;
+import com.maihuuphuoc.example05.service.ProductImportService;
 import com.maihuuphuoc.example05.service.ProductService;
 
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
 @RestController
@@ -35,15 +50,44 @@ import jakarta.validation.Valid;
 @SecurityRequirement(name = "E-Commerce Application")
 public class ProductController {
 
+    private static final MediaType EXPORT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    // Same names the import reads, quoted the way it parses them, line breaks included,
+    // so an export can be imported elsewhere
+    private static final List<String> EXPORT_COLUMNS = List.of("productId", "productName", "description", "image",
+            "quantity", "price", "discount", "specialPrice", "categoryId", "categoryName");
+
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ImageDelivery imageDelivery;
+
     @PostMapping("/admin/categories/{categoryId}/products")
     public ResponseEntity<ProductDTO> addProduct(@Valid @RequestBody Product product, @PathVariable Long categoryId) {
         ProductDTO savedProduct = productService.addProduct(categoryId, product);
         return new ResponseEntity<ProductDTO>(savedProduct, HttpStatus.CREATED);
     }
 
+    // The body is read as it arrives; one row per line, or several when a quoted CSV field holds line breaks
+    @PostMapping(value = "/admin/products/import", consumes = "text/csv")
+    public ResponseEntity<ProductImportReport> importProductsCsv(InputStream body) throws IOException {
+        ProductImportReport report = productImportService.importProducts(body, ProductImportService.Format.CSV);
+        return new ResponseEntity<ProductImportReport>(report, HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/admin/products/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ProductImportReport> importProductsNdjson(InputStream body) throws IOException {
+        ProductImportReport report = productImportService.importProducts(body, ProductImportService.Format.NDJSON);
+        return new ResponseEntity<ProductImportReport>(report, HttpStatus.OK);
+    }
+
     @GetMapping("/public/products/{productId}")
     public ResponseEntity<ProductDTO> getOneCategory(@PathVariable Long productId) {
         ProductDTO productDTO = productService.getProductById(productId);
@@ -71,7 +115,15 @@ public class ProductController {
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_PRODUCTS_BY, required = false) String sortBy,
-            @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
+            @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withCount", defaultValue = "false", required = false) boolean withCount) {
+
+        if (cursor != null) {
+            ProductResponse productResponse = productService.getAllProductsByCursor(cursor, pageSize,
+                    "id".equals(sortBy) ? "productId" : sortBy, sortOrder, withCount);
+            return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.OK);
+        }
 
         ProductResponse productResponse = productService.getAllProducts(
                 pageNumber == 0 ? pageNumber : pageNumber - 1,
@@ -82,6 +134,82 @@ public class ProductController {
         return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.OK);
     }
 
+    // Search box completions: a few product and category names, never an error when nothing matches
+    @GetMapping("/public/products/suggest")
+    public ResponseEntity<List<SuggestionDTO>> suggest(@RequestParam(name = "q") String query,
+            @RequestParam(name = "limit", defaultValue = "10", required = false) Integer limit) {
+        List<SuggestionDTO> suggestions = productService.suggest(query, limit);
+        return new ResponseEntity<List<SuggestionDTO>>(suggestions, HttpStatus.OK);
+    }
+
+    // Products most often bought together with this one; empty while the order history is still being scanned
+    @GetMapping("/public/products/{productId}/related")
+    public ResponseEntity<List<ProductDTO>> getRelatedProducts(@PathVariable Long productId,
+            @RequestParam(name = "limit", defaultValue = "10", required = false) Integer limit) {
+        List<ProductDTO> related = productService.getRelatedProducts(productId, limit);
+        return new ResponseEntity<List<ProductDTO>>(related, HttpStatus.OK);
+    }
+
+    // Top sellers by units, overall or in one category; period=recent counts only the last days of orders
+    @GetMapping("/public/products/bestsellers")
+    public ResponseEntity<ProductResponse> getBestSellers(
+            @RequestParam(name = "categoryId", required = false) Long categoryId,
+            @RequestParam(name = "period", defaultValue = "all", required = false) String period,
+            @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
+            @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize) {
+        boolean recent = period.equalsIgnoreCase("recent");
+
+        ProductResponse productResponse = productService.getBestSellers(categoryId, recent,
+                pageNumber == 0 ? pageNumber : pageNumber - 1, pageSize);
+
+        return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.OK);
+    }
+
+    // Filters combine with AND; categoryId may be repeated and matches any of the given categories
+    @GetMapping("/public/products/facets")
+    public ResponseEntity<ProductResponse> filterProducts(
+            @RequestParam(name = "categoryId", required = false) List<Long> categoryIds,
+            @RequestParam(name = "minPrice", required = false) Double minPrice,
+            @RequestParam(name = "maxPrice", required = false) Double maxPrice,
+            @RequestParam(name = "minDiscount", required = false) Double minDiscount,
+            @RequestParam(name = "inStock", required = false) Boolean inStock,
+            @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
+            @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize) {
+
+        ProductResponse productResponse = productService.filterProducts(categoryIds, minPrice, maxPrice,
+                minDiscount, inStock, pageNumber == 0 ? pageNumber : pageNumber - 1, pageSize);
+
+        return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.OK);
+    }
+
+    // The whole catalog, or one category, written row by row while it is read from the database
+    @GetMapping("/public/products/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(name = "categoryId", required = false) Long categoryId,
+            @RequestParam(name = "format", defaultValue = "ndjson", required = false) String format) {
+        boolean csv = format.equalsIgnoreCase("csv");
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (csv) {
+                writer.write(String.join(",", EXPORT_COLUMNS));
+                writer.write('\n');
+            }
+            productService.exportProducts(categoryId, productDTO -> {
+                try {
+                    writer.write(csv ? toCsvLine(productDTO) : objectMapper.writeValueAsString(productDTO));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(csv ? EXPORT_CSV : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=products." + (csv ? "csv" : "ndjson"))
+                .body(body);
+    }
+
     @GetMapping("/public/categories/{categoryId}/products")
     public ResponseEntity<ProductResponse> getProductsByCategory(@PathVariable Long categoryId,
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
@@ -103,7 +231,7 @@ public class ProductController {
     public ResponseEntity<ProductResponse> getProductsByKeyword(@PathVariable String keyword,
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
-            @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_PRODUCTS_BY, required = false) String sortBy,
+            @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_SEARCH_BY, required = false) String sortBy,
             @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder,
             @RequestParam(name = "categoryId", defaultValue = "0", required = false) Long categoryId) {
 
@@ -118,14 +246,12 @@ public class ProductController {
         return new ResponseEntity<ProductResponse>(productResponse, HttpStatus.OK);
     }
 
+    // size=thumb|card|full picks a resized variant; the original is served until the variant is written
     @GetMapping("/public/products/image/{fileName}")
-    public ResponseEntity<InputStreamResource> getImage(@PathVariable String fileName) throws FileNotFoundException {
-        InputStream imageStream = productService.getProductImage(fileName);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_PNG);
-        headers.setContentDispositionFormData("inline", fileName);
-
-        return new ResponseEntity<>(new InputStreamResource(imageStream), headers, HttpStatus.OK);
+    public void getImage(@PathVariable String fileName,
+            @RequestParam(name = "size", required = false) String size,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        imageDelivery.send(productService.getProductImage(fileName, size), request, response);
     }
 
     @PutMapping("/admin/products/{productId}")
@@ -146,4 +272,25 @@ public class ProductController {
         String status = productService.deleteProduct(productId);
         return new ResponseEntity<String>(status, HttpStatus.OK);
     }
-}
\ No newline at end of file
+
+    private static String toCsvLine(ProductDTO productDTO) {
+        CategoryDTO category = productDTO.getCategory();
+        return Stream.of(productDTO.getProductId(), productDTO.getProductName(), productDTO.getDescription(),
+                productDTO.getImage(), productDTO.getQuantity(), productDTO.getPrice(), productDTO.getDiscount(),
+                productDTO.getSpecialPrice(), category != null ? category.getCategoryId() : null,
+                category != null ? category.getCategoryName() : null)
+                .map(ProductController::toCsvField)
+                .collect(Collectors.joining(","));
+    }
+
+    private static String toCsvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
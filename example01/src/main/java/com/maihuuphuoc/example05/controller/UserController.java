@@ -43,7 +43,14 @@ public class UserController {
             @RequestParam(name = "pageNumber", defaultValue = AppConstants.PAGE_NUMBER, required = false) Integer pageNumber,
             @RequestParam(name = "pageSize", defaultValue = AppConstants.PAGE_SIZE, required = false) Integer pageSize,
             @RequestParam(name = "sortBy", defaultValue = AppConstants.SORT_USERS_BY, required = false) String sortBy,
-            @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder) {
+            @RequestParam(name = "sortOrder", defaultValue = AppConstants.SORT_DIR, required = false) String sortOrder,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "withCount", defaultValue = "false", required = false) boolean withCount) {
+        if (cursor != null) {
+            UserResponse userResponse = userService.getAllUsersByCursor(cursor, pageSize, sortBy, sortOrder,
+                    withCount);
+            return new ResponseEntity<>(userResponse, HttpStatus.OK);
+        }
         UserResponse userResponse = userService.getAllUsers(pageNumber, pageSize, sortBy, sortOrder);
         return new ResponseEntity<>(userResponse, HttpStatus.OK);
     }
@@ -10,6 +10,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
@@ -20,7 +21,12 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "orders")
+// One (sort key, id) index per key OrderServiceImpl allows cursor paging by, so each page is an index range scan
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_email_id", columnList = "email, order_id"),
+        @Index(name = "idx_orders_order_date_id", columnList = "order_date, order_id"),
+        @Index(name = "idx_orders_total_amount_id", columnList = "total_amount, order_id"),
+        @Index(name = "idx_orders_order_status_id", columnList = "order_status, order_id") })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
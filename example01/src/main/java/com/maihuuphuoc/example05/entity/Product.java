@@ -1,26 +1,52 @@
 package com.maihuuphuoc.example05.entity;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 @Entity
-@Table(name = "products")
+// One (sort key, id) index per key ProductServiceImpl allows cursor paging by, so each page is an index range scan
+@Table(name = "products",
+        uniqueConstraints = @UniqueConstraint(name = "uk_products_fingerprint", columnNames = "fingerprint"),
+        indexes = {
+                @Index(name = "idx_products_product_name_id", columnList = "product_name, product_id"),
+                @Index(name = "idx_products_quantity_id", columnList = "quantity, product_id"),
+                @Index(name = "idx_products_price_id", columnList = "price, product_id"),
+                @Index(name = "idx_products_discount_id", columnList = "discount, product_id"),
+                @Index(name = "idx_products_special_price_id", columnList = "special_price, product_id") })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -49,9 +75,60 @@ public class Product {
     @JoinColumn(name = "category_id")
     private Category category;
 
-    @OneToMany(mappedBy = "product", cascade = { CascadeType.PERSIST, CascadeType.MERGE }, fetch = FetchType.EAGER)
+    // Hash of category, name and description; the unique index rejects duplicates atomically
+    @JsonIgnore
+    @Column(length = 64)
+    private String fingerprint;
+
+    @OneToMany(mappedBy = "product", cascade = { CascadeType.PERSIST, CascadeType.MERGE }, fetch = FetchType.LAZY)
     private List<CartItem> products = new ArrayList<>();
 
     @OneToMany(mappedBy = "product", cascade = { CascadeType.PERSIST, CascadeType.MERGE })
     private List<OrderItem> orderItems = new ArrayList<>();
-}
\ No newline at end of file
+
+    // Category, name and description as last read or written, to tell whether an update changes them
+    @JsonIgnore
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String loadedKey;
+
+    @PrePersist
+    void computeFingerprint() {
+        fingerprint = fingerprintOf(categoryId(), productName, description);
+    }
+
+    // Only recomputed when the key changes: a legacy duplicate keeps its null
+    // fingerprint through edits of its price, stock or image
+    @PreUpdate
+    void recomputeFingerprint() {
+        if (!keyOf(categoryId(), productName, description).equals(loadedKey)) {
+            computeFingerprint();
+        }
+    }
+
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    void rememberKey() {
+        loadedKey = keyOf(categoryId(), productName, description);
+    }
+
+    private Long categoryId() {
+        return category != null ? category.getCategoryId() : null;
+    }
+
+    private static String keyOf(Long categoryId, String productName, String description) {
+        return categoryId + "\u0000" + productName + "\u0000" + description;
+    }
+
+    public static String fingerprintOf(Long categoryId, String productName, String description) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String key = keyOf(categoryId, productName, description);
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
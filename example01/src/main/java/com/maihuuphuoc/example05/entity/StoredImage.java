@@ -0,0 +1,36 @@
+package com.maihuuphuoc.example05.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A file of the content-addressed image store and how many products and
+ * blogs use it. Files whose count stays at zero are removed by the sweeper.
+ */
+@Entity
+@Data
+@Table(name = "stored_images", indexes = @Index(name = "idx_stored_images_released",
+        columnList = "reference_count, updated_at"))
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredImage {
+
+    // SHA-256 of the content in hex, followed by the upload's extension
+    @Id
+    @Column(name = "file_name", length = 80)
+    private String fileName;
+
+    @Column(name = "reference_count", nullable = false)
+    private int referenceCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -12,6 +12,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.OneToOne;
@@ -25,7 +26,12 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "users")
+// One (sort key, id) index per key UserServiceImpl allows cursor paging by, so each page is an index range
+// scan; email needs none, its unique index has no ties to order
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_first_name_id", columnList = "first_name, user_id"),
+        @Index(name = "idx_users_last_name_id", columnList = "last_name, user_id"),
+        @Index(name = "idx_users_mobile_number_id", columnList = "mobile_number, user_id") })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -1,6 +1,8 @@
 package com.maihuuphuoc.example05.exceptions;
 
+import java.io.FileNotFoundException;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import org.springframework.dao.DataIntegrityViolationException;
@@ -26,6 +28,11 @@ public class MyGlobalExceptionHandler {
         return buildResponse(e.getMessage(), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(FileNotFoundException.class)
+    public ResponseEntity<APIResponse> handleFileNotFoundException(FileNotFoundException e) {
+        return buildResponse(e.getMessage(), HttpStatus.NOT_FOUND);
+    }
+
     @ExceptionHandler(APIException.class)
     public ResponseEntity<APIResponse> handleAPIException(APIException e) {
         return buildResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
@@ -66,6 +73,11 @@ public class MyGlobalExceptionHandler {
         return buildResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<APIResponse> handleRejectedExecutionException(RejectedExecutionException e) {
+        return buildResponse("Server is busy, please retry shortly", HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     private ResponseEntity<APIResponse> buildResponse(String message, HttpStatus status) {
         APIResponse res = new APIResponse(message, false);
         return new ResponseEntity<>(res, status);
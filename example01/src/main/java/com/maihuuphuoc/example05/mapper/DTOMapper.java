@@ -0,0 +1,168 @@
+package com.maihuuphuoc.example05.mapper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.entity.Address;
+import com.maihuuphuoc.example05.entity.Cart;
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Order;
+import com.maihuuphuoc.example05.entity.OrderItem;
+import com.maihuuphuoc.example05.entity.Payment;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.entity.User;
+import com.maihuuphuoc.example05.payloads.AddressDTO;
+import com.maihuuphuoc.example05.payloads.CartDTO;
+import com.maihuuphuoc.example05.payloads.CategoryDTO;
+import com.maihuuphuoc.example05.payloads.OrderDTO;
+import com.maihuuphuoc.example05.payloads.OrderItemDTO;
+import com.maihuuphuoc.example05.payloads.PaymentDTO;
+import com.maihuuphuoc.example05.payloads.ProductDTO;
+import com.maihuuphuoc.example05.payloads.UserDTO;
+import com.maihuuphuoc.example05.repository.CartLineRow;
+import com.maihuuphuoc.example05.repository.CatalogRow;
+
+/**
+ * Hand-written entity to DTO conversions for the hot read paths. The output
+ * matches what the reflective ModelMapper produced for the same entities,
+ * including its quirks (discount truncated to an Integer, stock quantity
+ * rendered as a String, password copied into UserDTO).
+ */
+@Component
+public class DTOMapper {
+
+    public ProductDTO toProductDTO(Product product) {
+        if (product == null) {
+            return null;
+        }
+        ProductDTO dto = new ProductDTO();
+        dto.setProductId(product.getProductId());
+        dto.setProductName(product.getProductName());
+        dto.setImage(product.getImage());
+        dto.setDescription(product.getDescription());
+        dto.setQuantity(product.getQuantity() != null ? product.getQuantity().toString() : null);
+        dto.setPrice(product.getPrice());
+        dto.setDiscount((int) product.getDiscount());
+        dto.setSpecialPrice(product.getSpecialPrice());
+        dto.setCategory(toCategoryDTO(product.getCategory()));
+        return dto;
+    }
+
+    public ProductDTO toProductDTO(CatalogRow row) {
+        ProductDTO dto = new ProductDTO();
+        dto.setProductId(row.productId());
+        dto.setProductName(row.productName());
+        dto.setImage(row.image());
+        dto.setDescription(row.description());
+        dto.setQuantity(row.quantity() != null ? row.quantity().toString() : null);
+        dto.setPrice(row.price());
+        dto.setDiscount(row.discount() != null ? (int) row.discount().doubleValue() : null);
+        dto.setSpecialPrice(row.specialPrice());
+        dto.setCategory(row.categoryId() != null ? new CategoryDTO(row.categoryId(), row.categoryName()) : null);
+        return dto;
+    }
+
+    public ProductDTO toProductDTO(CartLineRow row) {
+        ProductDTO dto = new ProductDTO();
+        dto.setProductId(row.productId());
+        dto.setProductName(row.productName());
+        dto.setImage(row.image());
+        dto.setDescription(row.description());
+        dto.setQuantity(row.stock() != null ? row.stock().toString() : null);
+        dto.setPrice(row.price());
+        dto.setDiscount(row.discount() != null ? (int) row.discount().doubleValue() : null);
+        dto.setSpecialPrice(row.specialPrice());
+        dto.setCategory(row.categoryId() != null ? new CategoryDTO(row.categoryId(), row.categoryName()) : null);
+        dto.setCartItemQuantity(row.cartItemQuantity() != null ? row.cartItemQuantity() : 0);
+        dto.setStock(row.stock() != null ? row.stock() : 0);
+        return dto;
+    }
+
+    public CategoryDTO toCategoryDTO(Category category) {
+        if (category == null) {
+            return null;
+        }
+        return new CategoryDTO(category.getCategoryId(), category.getCategoryName());
+    }
+
+    /**
+     * Cart header only; callers fill in products and quantity themselves.
+     */
+    public CartDTO toCartDTO(Cart cart) {
+        if (cart == null) {
+            return null;
+        }
+        CartDTO dto = new CartDTO();
+        dto.setCartId(cart.getCartId());
+        dto.setTotalPrice(cart.getTotalPrice());
+        return dto;
+    }
+
+    public OrderDTO toOrderDTO(Order order) {
+        if (order == null) {
+            return null;
+        }
+        OrderDTO dto = new OrderDTO();
+        dto.setOrderId(order.getOrderId());
+        dto.setEmail(order.getEmail());
+        dto.setOrderItems(toOrderItemDTOs(order.getOrderItems()));
+        dto.setOrderDate(order.getOrderDate());
+        dto.setPayment(toPaymentDTO(order.getPayment()));
+        dto.setTotalAmount(order.getTotalAmount());
+        dto.setOrderStatus(order.getOrderStatus());
+        return dto;
+    }
+
+    public OrderItemDTO toOrderItemDTO(OrderItem orderItem) {
+        if (orderItem == null) {
+            return null;
+        }
+        return new OrderItemDTO(orderItem.getOrderItemId(), toProductDTO(orderItem.getProduct()),
+                orderItem.getQuantity(), orderItem.getDiscount(), orderItem.getOrderedProductPrice());
+    }
+
+    public PaymentDTO toPaymentDTO(Payment payment) {
+        if (payment == null) {
+            return null;
+        }
+        return new PaymentDTO(payment.getPaymentId(), payment.getPaymentMethod());
+    }
+
+    public UserDTO toUserDTO(User user) {
+        if (user == null) {
+            return null;
+        }
+        UserDTO dto = new UserDTO();
+        dto.setUserId(user.getUserId());
+        dto.setFirstName(user.getFirstName());
+        dto.setLastName(user.getLastName());
+        dto.setMobileNumber(user.getMobileNumber());
+        dto.setEmail(user.getEmail());
+        dto.setPassword(user.getPassword());
+        dto.setRoles(user.getRoles() != null ? new HashSet<>(user.getRoles()) : null);
+        dto.setCart(toCartDTO(user.getCart()));
+        return dto;
+    }
+
+    public AddressDTO toAddressDTO(Address address) {
+        if (address == null) {
+            return null;
+        }
+        return new AddressDTO(address.getAddressId(), address.getStreet(), address.getBuildingName(),
+                address.getCity(), address.getState(), address.getCountry(), address.getPincode());
+    }
+
+    private List<OrderItemDTO> toOrderItemDTOs(List<OrderItem> orderItems) {
+        if (orderItems == null) {
+            return null;
+        }
+        List<OrderItemDTO> dtos = new ArrayList<>(orderItems.size());
+        for (OrderItem orderItem : orderItems) {
+            dtos.add(toOrderItemDTO(orderItem));
+        }
+        return dtos;
+    }
+}
@@ -0,0 +1,15 @@
+package com.maihuuphuoc.example05.payloads;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartLineDTO {
+
+    private Long productId;
+    private Integer quantity;
+
+}
@@ -0,0 +1,24 @@
+package com.maihuuphuoc.example05.payloads;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderRequestDTO {
+    public enum Status {
+        QUEUED, PROCESSING, COMPLETED, FAILED
+    }
+
+    private String requestId;
+    private Status status;
+    private String email;
+    private Long cartId;
+    private OrderDTO order;
+    private String message;
+}
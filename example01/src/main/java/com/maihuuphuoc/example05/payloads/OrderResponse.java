@@ -2,6 +2,8 @@ package com.maihuuphuoc.example05.payloads;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,4 +18,13 @@ public class OrderResponse {
     private Long totalElements;
     private Integer totalPages;
     private boolean lastPage;
+
+    // Only set in cursor mode: token for the next slice, absent on the last one
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    public OrderResponse(List<OrderDTO> content, Integer pageNumber, Integer pageSize, Long totalElements,
+            Integer totalPages, boolean lastPage) {
+        this(content, pageNumber, pageSize, totalElements, totalPages, lastPage, null);
+    }
 }
\ No newline at end of file
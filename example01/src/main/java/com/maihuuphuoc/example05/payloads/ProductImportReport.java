@@ -0,0 +1,31 @@
+package com.maihuuphuoc.example05.payloads;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportReport {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private long line;
+        private String message;
+    }
+
+    private long rowsRead;
+    private long imported;
+    private long duplicates;
+    private long rejected;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    // Only the first errors are listed, see product.import.max-errors
+    private List<RowError> errors = new ArrayList<>();
+}
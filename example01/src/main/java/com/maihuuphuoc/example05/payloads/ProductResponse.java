@@ -1,6 +1,9 @@
 package com.maihuuphuoc.example05.payloads;
 
 import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -16,4 +19,17 @@ public class ProductResponse {
     private Long totalElements;
     private Integer totalPages;
     private boolean lastPage;
+
+    // Only set in cursor mode: token for the next slice, absent on the last one
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    // Only set by the faceted filter: facet name -> value -> number of matching products
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Map<String, Long>> facets;
+
+    public ProductResponse(List<ProductDTO> content, Integer pageNumber, Integer pageSize, Long totalElements,
+            Integer totalPages, boolean lastPage) {
+        this(content, pageNumber, pageSize, totalElements, totalPages, lastPage, null, null);
+    }
 }
\ No newline at end of file
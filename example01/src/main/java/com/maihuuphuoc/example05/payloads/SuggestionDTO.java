@@ -0,0 +1,16 @@
+package com.maihuuphuoc.example05.payloads;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+
+    private String type;
+    private Long id;
+    private String text;
+
+}
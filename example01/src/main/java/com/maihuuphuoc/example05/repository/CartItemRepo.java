@@ -1,5 +1,8 @@
 package com.maihuuphuoc.example05.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -15,6 +18,33 @@ public interface CartItemRepo extends JpaRepository<CartItem, Long> {
     @Query("SELECT ci FROM CartItem ci WHERE ci.cart.id = :cartId AND ci.product.id = :productId")
     CartItem findCartItemByProductIdAndCartId(@Param("cartId") Long cartId, @Param("productId") Long productId);
 
+    // Cart lines with their products and categories, in one query
+    @Query("SELECT ci FROM CartItem ci JOIN FETCH ci.product p LEFT JOIN FETCH p.category "
+            + "WHERE ci.cart.cartId = :cartId ORDER BY ci.cartItemId")
+    List<CartItem> findLinesByCartId(@Param("cartId") Long cartId);
+
+    @Modifying
+    @Query("UPDATE CartItem ci SET ci.productPrice = :newPrice "
+            + "WHERE ci.product.productId = :productId AND ci.productPrice <> :newPrice")
+    int repriceLinesForProduct(@Param("productId") Long productId, @Param("newPrice") double newPrice);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM CartItem ci WHERE ci.cart.cartId = :cartId")
+    int deleteAllByCartId(@Param("cartId") Long cartId);
+
+    // Units held per product across the given carts
+    @Query("SELECT ci.product.productId, SUM(ci.quantity) FROM CartItem ci WHERE ci.cart.cartId IN :cartIds "
+            + "GROUP BY ci.product.productId")
+    List<Object[]> sumQuantitiesByProduct(@Param("cartIds") Collection<Long> cartIds);
+
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.product.productId IN :productIds")
+    int deleteAllByProductIds(@Param("productIds") Collection<Long> productIds);
+
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.cart.cartId IN :cartIds")
+    int deleteAllByCartIds(@Param("cartIds") Collection<Long> cartIds);
+
     @Modifying
     @Query("DELETE FROM CartItem ci WHERE ci.cart.id = :cartId AND ci.product.id = :productId")
     void deleteCartItemByProductIdAndCartId(@Param("cartId") Long cartId, @Param("productId") Long productId);
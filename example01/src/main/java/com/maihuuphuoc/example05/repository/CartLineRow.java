@@ -0,0 +1,10 @@
+package com.maihuuphuoc.example05.repository;
+
+/**
+ * One cart line of the admin cart report, read as scalars. Carts without
+ * items appear once with a null productId.
+ */
+public record CartLineRow(Long cartId, Double totalPrice, String email, Integer cartItemQuantity,
+        Long productId, String productName, String image, String description, Integer stock, Double price,
+        Double discount, Double specialPrice, Long categoryId, String categoryName) {
+}
@@ -1,26 +1,89 @@
 package com.maihuuphuoc.example05.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.maihuuphuoc.example05.entity.Cart;
 import com.maihuuphuoc.example05.entity.User; // Don't forget to import User  
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
 @Repository
 public interface CartRepo extends JpaRepository<Cart, Long> {
 
+    String CART_LINE_ROWS = "SELECT new com.maihuuphuoc.example05.repository.CartLineRow("
+            + "c.cartId, c.totalPrice, u.email, ci.quantity, p.productId, p.productName, p.image, p.description, "
+            + "p.quantity, p.price, p.discount, p.specialPrice, cat.categoryId, cat.categoryName) "
+            + "FROM Cart c LEFT JOIN c.user u LEFT JOIN c.cartItems ci LEFT JOIN ci.product p "
+            + "LEFT JOIN p.category cat ";
+
     @Query("SELECT c FROM Cart c WHERE c.user.email = ?1 AND c.id = ?2")
     Cart findCartByEmailAndCartId(String email, Long cartId);
 
     @Query("SELECT c FROM Cart c JOIN FETCH c.cartItems ci JOIN FETCH ci.product p WHERE p.id = ?1")
     List<Cart> findCartsByProductId(Long productId);
 
+    // Moves each cart total by the price difference of its lines for the product; run before repricing the lines
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Cart c SET c.totalPrice = c.totalPrice + (SELECT SUM(ci.quantity * (?2 - ci.productPrice)) "
+            + "FROM CartItem ci WHERE ci.cart = c AND ci.product.productId = ?1) "
+            + "WHERE c.cartId IN (SELECT ci.cart.cartId FROM CartItem ci "
+            + "WHERE ci.product.productId = ?1 AND ci.productPrice <> ?2)")
+    int repriceTotalsForProduct(Long productId, double newPrice);
+
     // Method to check if a cart exists for a user
     boolean existsByUser(User user);
 
     Cart findByUser(User user);
 
+    // Carts from before updatedAt existed have it NULL and count as idle
+    @Query("SELECT MIN(c.cartId), MAX(c.cartId) FROM Cart c WHERE (c.updatedAt IS NULL OR c.updatedAt < ?1) "
+            + "AND c.cartItems IS NOT EMPTY")
+    List<Object[]> findIdleCartIdRange(LocalDateTime idleSince);
+
+    @Query("SELECT c.cartId FROM Cart c WHERE (c.updatedAt IS NULL OR c.updatedAt < ?1) "
+            + "AND c.cartId > ?2 AND c.cartId <= ?3 AND c.cartItems IS NOT EMPTY ORDER BY c.cartId")
+    List<Long> findIdleCartIdsBetween(LocalDateTime idleSince, Long afterCartId, Long lastCartId, Pageable pageable);
+
+    // Locks the carts that are still idle so a shopper's change waits for the sweep (or wins before it)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Cart c WHERE c.cartId IN ?1 AND (c.updatedAt IS NULL OR c.updatedAt < ?2) "
+            + "ORDER BY c.cartId")
+    List<Cart> lockIdleCarts(Collection<Long> cartIds, LocalDateTime idleSince);
+
+    @Query("SELECT DISTINCT ci.cart.cartId FROM CartItem ci WHERE ci.product.productId IN ?1")
+    List<Long> findCartIdsByProductIds(Collection<Long> productIds);
+
+    // Takes the lines of the given products out of the cart totals; run before deleting the lines
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Cart c SET c.totalPrice = c.totalPrice - (SELECT SUM(ci.quantity * ci.productPrice) "
+            + "FROM CartItem ci WHERE ci.cart = c AND ci.product.productId IN ?1) WHERE c.cartId IN ?2")
+    int subtractProductLines(Collection<Long> productIds, Collection<Long> cartIds);
+
+    @Modifying
+    @Query("UPDATE Cart c SET c.totalPrice = 0 WHERE c.cartId IN ?1")
+    int resetTotals(Collection<Long> cartIds);
+
+    @Query("SELECT c.cartId FROM Cart c ORDER BY c.cartId")
+    List<Long> findCartIds(Pageable pageable);
+
+    @Query(CART_LINE_ROWS + "WHERE c.cartId IN ?1 ORDER BY c.cartId, ci.cartItemId")
+    List<CartLineRow> findCartLineRows(Collection<Long> cartIds);
+
+    // Read through a server-side cursor (useCursorFetch on MySQL) instead of buffering the result
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(CART_LINE_ROWS + "ORDER BY c.cartId, ci.cartItemId")
+    Stream<CartLineRow> streamCartLineRows();
+
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package com.maihuuphuoc.example05.repository;
+
+/**
+ * One product of the catalog export, read as scalars together with its category.
+ */
+public record CatalogRow(Long productId, String productName, String image, String description, Integer quantity,
+        Double price, Double discount, Double specialPrice, Long categoryId, String categoryName) {
+}
@@ -1,6 +1,8 @@
 package com.maihuuphuoc.example05.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.maihuuphuoc.example05.entity.Category;
@@ -8,4 +10,8 @@ import com.maihuuphuoc.example05.entity.Category;
 @Repository
 public interface CategoryRepo extends JpaRepository<Category, Long> {
     Category findByCategoryName(String categoryName);
+
+    @Modifying
+    @Query("DELETE FROM Category c WHERE c.categoryId = ?1")
+    int deleteCategoryById(Long categoryId);
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package com.maihuuphuoc.example05.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.exceptions.APIException;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * Keyset (seek) pagination over any entity: rows are ordered by the sort key
+ * and then the id, and each page starts strictly after the last row of the
+ * previous one. The continuation token is opaque to clients and carries the
+ * sort key, direction and last (value, id) pair, so page cost does not depend
+ * on how deep the client has paged and no COUNT is needed. Callers name the
+ * scalar attributes a client may sort by; associations, collections and
+ * private columns are rejected before any query is built.
+ */
+@Component
+public class KeysetPager {
+
+    private static final String SEPARATOR = "\u001f";
+
+    public record Slice<T>(List<T> content, String nextCursor) {
+    }
+
+    private record Position(String value, Long id) {
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * @param sortKeys attributes the client may sort by, each a basic column of the entity
+     * @param cursor token from a previous slice, or null/blank for the first one
+     * @param fetches to-one associations to fetch-join into every row
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <T> Slice<T> fetch(Class<T> type, String idAttribute, Set<String> sortKeys, String sortBy,
+            String sortOrder, String cursor, int pageSize, String... fetches) {
+        if (pageSize < 1) {
+            throw new APIException("Page size must be greater than 0");
+        }
+        if (!sortBy.equals(idAttribute) && !sortKeys.contains(sortBy)) {
+            Set<String> allowed = new TreeSet<>(sortKeys);
+            allowed.add(idAttribute);
+            throw new APIException("Cannot sort " + type.getSimpleName() + " by " + sortBy + ", use one of "
+                    + String.join(", ", allowed));
+        }
+        boolean ascending = sortOrder.equalsIgnoreCase("asc");
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(type);
+        Root<T> root = query.from(type);
+        for (String fetch : fetches) {
+            root.fetch(fetch, JoinType.LEFT);
+        }
+
+        Path id;
+        Path key;
+        try {
+            id = root.get(idAttribute);
+            key = root.get(sortBy);
+        } catch (IllegalArgumentException e) {
+            throw new APIException("Cannot sort " + type.getSimpleName() + " by " + sortBy);
+        }
+        boolean sortById = sortBy.equals(idAttribute);
+
+        if (cursor != null && !cursor.isBlank()) {
+            Position position = decode(cursor, sortBy, ascending);
+            Predicate afterId = ascending ? cb.greaterThan(id, position.id()) : cb.lessThan(id, position.id());
+            if (sortById) {
+                query.where(afterId);
+            } else if (position.value() == null) {
+                // NULL keys sort first ascending and last descending
+                Predicate sameKey = cb.and(cb.isNull(key), afterId);
+                query.where(ascending ? cb.or(sameKey, cb.isNotNull(key)) : sameKey);
+            } else {
+                Comparable value = parse(position.value(), key.getJavaType(), sortBy);
+                Predicate afterKey = ascending ? cb.greaterThan(key, value) : cb.lessThan(key, value);
+                Predicate sameKey = cb.and(cb.equal(key, value), afterId);
+                query.where(ascending ? cb.or(afterKey, sameKey) : cb.or(afterKey, sameKey, cb.isNull(key)));
+            }
+        }
+
+        if (sortById) {
+            query.orderBy(ascending ? cb.asc(id) : cb.desc(id));
+        } else {
+            query.orderBy(ascending ? cb.asc(key) : cb.desc(key), ascending ? cb.asc(id) : cb.desc(id));
+        }
+
+        List<T> rows = entityManager.createQuery(query).setMaxResults(pageSize + 1).getResultList();
+        if (rows.size() <= pageSize) {
+            return new Slice<>(rows, null);
+        }
+        List<T> content = new ArrayList<>(rows.subList(0, pageSize));
+        T last = content.get(pageSize - 1);
+        var accessor = PropertyAccessorFactory.forBeanPropertyAccess(last);
+        Object lastValue = accessor.getPropertyValue(sortBy);
+        Long lastId = ((Number) accessor.getPropertyValue(idAttribute)).longValue();
+        return new Slice<>(content, encode(sortBy, ascending, lastValue, lastId));
+    }
+
+    private static String encode(String sortBy, boolean ascending, Object value, Long id) {
+        String raw = String.join(SEPARATOR, sortBy, ascending ? "asc" : "desc",
+                value == null ? "0" : "1", value == null ? "" : value.toString(), id.toString());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Position decode(String cursor, String sortBy, boolean ascending) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, -1);
+            if (parts.length != 5 || !parts[0].equals(sortBy) || !parts[1].equals(ascending ? "asc" : "desc")) {
+                throw new APIException("Cursor does not match the requested sort");
+            }
+            return new Position(parts[2].equals("1") ? parts[3] : null, Long.valueOf(parts[4]));
+        } catch (IllegalArgumentException e) {
+            throw new APIException("Invalid cursor");
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Comparable parse(String value, Class<?> javaType, String sortBy) {
+        try {
+            if (javaType == String.class) {
+                return value;
+            } else if (javaType == Long.class || javaType == long.class) {
+                return Long.valueOf(value);
+            } else if (javaType == Integer.class || javaType == int.class) {
+                return Integer.valueOf(value);
+            } else if (javaType == Double.class || javaType == double.class) {
+                return Double.valueOf(value);
+            } else if (javaType == LocalDate.class) {
+                return LocalDate.parse(value);
+            } else if (javaType == LocalDateTime.class) {
+                return LocalDateTime.parse(value);
+            }
+        } catch (RuntimeException e) {
+            throw new APIException("Invalid cursor");
+        }
+        throw new APIException("Cursor paging is not supported when sorting by " + sortBy);
+    }
+}
@@ -0,0 +1,14 @@
+package com.maihuuphuoc.example05.repository;
+
+import java.util.List;
+
+import com.maihuuphuoc.example05.entity.OrderItem;
+
+public interface OrderItemBatchRepo {
+
+    /**
+     * Inserts the items with one JDBC batch and sets their generated ids.
+     * Their order and product must already be persisted.
+     */
+    void insertAll(List<OrderItem> orderItems);
+}
@@ -0,0 +1,71 @@
+package com.maihuuphuoc.example05.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+
+import com.maihuuphuoc.example05.entity.OrderItem;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+// OrderItem ids are IDENTITY columns, which Hibernate cannot batch, so the
+// insert goes straight through JDBC (rewriteBatchedStatements turns it into
+// one multi-row INSERT on MySQL)
+public class OrderItemBatchRepoImpl implements OrderItemBatchRepo {
+
+    private static final String INSERT_SQL = "INSERT INTO order_items "
+            + "(order_id, product_id, quantity, discount, ordered_product_price) VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void insertAll(List<OrderItem> orderItems) {
+        if (orderItems.isEmpty()) {
+            return;
+        }
+        // The JDBC batch must see the order row inserted through JPA
+        entityManager.flush();
+
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        OrderItem item = orderItems.get(i);
+                        ps.setLong(1, item.getOrder().getOrderId());
+                        ps.setLong(2, item.getProduct().getProductId());
+                        if (item.getQuantity() != null) {
+                            ps.setInt(3, item.getQuantity());
+                        } else {
+                            ps.setNull(3, Types.INTEGER);
+                        }
+                        ps.setDouble(4, item.getDiscount());
+                        ps.setDouble(5, item.getOrderedProductPrice());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return orderItems.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < keys.size() && i < orderItems.size(); i++) {
+            Object key = keys.get(i).values().iterator().next();
+            orderItems.get(i).setOrderItemId(((Number) key).longValue());
+        }
+    }
+}
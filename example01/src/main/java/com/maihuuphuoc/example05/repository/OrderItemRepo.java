@@ -1,10 +1,45 @@
 package com.maihuuphuoc.example05.repository;
 
+import java.time.LocalDate;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.maihuuphuoc.example05.entity.OrderItem;
 
 @Repository
-public interface OrderItemRepo extends JpaRepository<OrderItem, Long> {
+public interface OrderItemRepo extends JpaRepository<OrderItem, Long>, OrderItemBatchRepo {
+    // Units sold per product over all orders
+    @Query("SELECT oi.product.productId, SUM(oi.quantity) FROM OrderItem oi GROUP BY oi.product.productId")
+    List<Object[]> sumQuantitiesByProduct();
+
+    @Query("SELECT MIN(oi.order.orderId), MAX(oi.order.orderId) FROM OrderItem oi WHERE oi.order.orderId > ?1")
+    List<Object[]> findOrderIdRangeAfter(Long orderId);
+
+    @Query("SELECT COUNT(DISTINCT oi.order.orderId) FROM OrderItem oi WHERE oi.order.orderId <= ?1")
+    long countOrdersUpTo(Long orderId);
+
+    // (orderId, productId) of the orders in (afterOrderId, lastOrderId], grouped by order
+    @Query("SELECT oi.order.orderId, oi.product.productId FROM OrderItem oi "
+            + "WHERE oi.order.orderId > ?1 AND oi.order.orderId <= ?2 ORDER BY oi.order.orderId")
+    List<Object[]> findBasketRowsBetween(Long afterOrderId, Long lastOrderId);
+
+    @Query("SELECT MIN(oi.product.productId), MAX(oi.product.productId) FROM OrderItem oi")
+    List<Object[]> findSoldProductIdRange();
+
+    // (productId, categoryId, units) of the sold products in (afterProductId, lastProductId],
+    // counting the orders up to lastOrderId
+    @Query("SELECT p.productId, c.categoryId, SUM(oi.quantity) FROM OrderItem oi JOIN oi.product p "
+            + "LEFT JOIN p.category c WHERE p.productId > ?1 AND p.productId <= ?2 AND oi.order.orderId <= ?3 "
+            + "GROUP BY p.productId, c.categoryId")
+    List<Object[]> sumQuantitiesBetween(Long afterProductId, Long lastProductId, Long lastOrderId);
+
+    // (productId, orderDate, units) per day since the given date, same products and orders
+    @Query("SELECT oi.product.productId, o.orderDate, SUM(oi.quantity) FROM OrderItem oi JOIN oi.order o "
+            + "WHERE oi.product.productId > ?1 AND oi.product.productId <= ?2 AND o.orderId <= ?3 "
+            + "AND o.orderDate >= ?4 GROUP BY oi.product.productId, o.orderDate")
+    List<Object[]> sumDailyQuantitiesBetween(Long afterProductId, Long lastProductId, Long lastOrderId,
+            LocalDate since);
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.maihuuphuoc.example05.repository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public interface ProductBatchRepo {
+
+    /** Adds the given units to each product's stock with one JDBC batch. */
+    void addStock(Map<Long, Integer> quantities);
+
+    /** Streams the duplicate-check key of every product through a forward-only cursor. */
+    void forEachProductKey(Consumer<ProductKey> sink);
+
+    /**
+     * Streams every product, or only those of one category when categoryId is
+     * not null, in productId order through a forward-only cursor.
+     */
+    void forEachCatalogRow(Long categoryId, Consumer<CatalogRow> sink);
+
+    /** Keys of up to {@code limit} products after the given id that have no fingerprint yet, in id order. */
+    Map<Long, ProductKey> findKeysWithoutFingerprint(long afterProductId, int limit);
+
+    /** Which of the given fingerprints some product already has. */
+    Set<String> findExistingFingerprints(Collection<String> fingerprints);
+
+    /** Stores the fingerprints, productId to fingerprint, with one JDBC batch. */
+    void setFingerprints(Map<Long, String> fingerprints);
+
+    /** Stores the fingerprint; returns false when another product already has it. */
+    boolean setFingerprint(Long productId, String fingerprint);
+}
@@ -0,0 +1,127 @@
+package com.maihuuphuoc.example05.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+public class ProductBatchRepoImpl implements ProductBatchRepo {
+
+    private static final String ADD_STOCK_SQL =
+            "UPDATE products SET quantity = COALESCE(quantity, 0) + ? WHERE product_id = ?";
+
+    private static final String PRODUCT_KEYS_SQL =
+            "SELECT category_id, product_name, description FROM products";
+
+    private static final String CATALOG_ROWS_SQL =
+            "SELECT p.product_id, p.product_name, p.image, p.description, p.quantity, p.price, p.discount, "
+                    + "p.special_price, c.category_id, c.category_name "
+                    + "FROM products p LEFT JOIN categories c ON c.category_id = p.category_id";
+
+    private static final String KEYS_WITHOUT_FINGERPRINT_SQL =
+            "SELECT product_id, category_id, product_name, description FROM products "
+                    + "WHERE fingerprint IS NULL AND product_id > ? ORDER BY product_id LIMIT ?";
+
+    private static final String EXISTING_FINGERPRINTS_SQL =
+            "SELECT fingerprint FROM products WHERE fingerprint IN (%s)";
+
+    private static final String SET_FINGERPRINT_SQL = "UPDATE products SET fingerprint = ? WHERE product_id = ?";
+
+    private static final int FETCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void addStock(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        // Rows are updated in id order so concurrent batches lock them in the same order
+        List<Object[]> args = new ArrayList<>(quantities.size());
+        new TreeMap<>(quantities).forEach((productId, quantity) -> args.add(new Object[] { quantity, productId }));
+        jdbcTemplate.batchUpdate(ADD_STOCK_SQL, args);
+    }
+
+    @Override
+    public void forEachProductKey(Consumer<ProductKey> sink) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(PRODUCT_KEYS_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> sink.accept(new ProductKey(rs.getObject(1) != null ? rs.getLong(1) : null,
+                rs.getString(2), rs.getString(3))));
+    }
+
+    @Override
+    public void forEachCatalogRow(Long categoryId, Consumer<CatalogRow> sink) {
+        String sql = CATALOG_ROWS_SQL + (categoryId != null ? " WHERE p.category_id = ?" : "")
+                + " ORDER BY p.product_id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            if (categoryId != null) {
+                statement.setLong(1, categoryId);
+            }
+            return statement;
+        }, (RowCallbackHandler) rs -> sink.accept(new CatalogRow(rs.getLong(1), rs.getString(2), rs.getString(3),
+                rs.getString(4), rs.getObject(5, Integer.class), rs.getObject(6, Double.class),
+                rs.getObject(7, Double.class), rs.getObject(8, Double.class), rs.getObject(9, Long.class),
+                rs.getString(10))));
+    }
+
+    @Override
+    public Map<Long, ProductKey> findKeysWithoutFingerprint(long afterProductId, int limit) {
+        Map<Long, ProductKey> keys = new LinkedHashMap<>();
+        jdbcTemplate.query(KEYS_WITHOUT_FINGERPRINT_SQL, (RowCallbackHandler) rs -> keys.put(rs.getLong(1),
+                new ProductKey(rs.getObject(2, Long.class), rs.getString(3), rs.getString(4))),
+                afterProductId, limit);
+        return keys;
+    }
+
+    @Override
+    public Set<String> findExistingFingerprints(Collection<String> fingerprints) {
+        Set<String> existing = new HashSet<>();
+        if (fingerprints.isEmpty()) {
+            return existing;
+        }
+        String sql = String.format(EXISTING_FINGERPRINTS_SQL,
+                String.join(", ", Collections.nCopies(fingerprints.size(), "?")));
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> existing.add(rs.getString(1)), fingerprints.toArray());
+        return existing;
+    }
+
+    @Override
+    public void setFingerprints(Map<Long, String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(fingerprints.size());
+        fingerprints.forEach((productId, fingerprint) -> args.add(new Object[] { fingerprint, productId }));
+        jdbcTemplate.batchUpdate(SET_FINGERPRINT_SQL, args);
+    }
+
+    @Override
+    public boolean setFingerprint(Long productId, String fingerprint) {
+        try {
+            return jdbcTemplate.update(SET_FINGERPRINT_SQL, fingerprint, productId) > 0;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.maihuuphuoc.example05.repository;
+
+/**
+ * The fields a product is considered a duplicate on: the same name and
+ * description within one category.
+ */
+public record ProductKey(Long categoryId, String productName, String description) {
+}
@@ -1,14 +1,22 @@
 package com.maihuuphuoc.example05.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.maihuuphuoc.example05.entity.Product;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
-public interface ProductRepo extends JpaRepository<Product, Long> {
+public interface ProductRepo extends JpaRepository<Product, Long>, ProductBatchRepo {
     // Tìm kiếm theo tên sản phẩm với chuỗi ký tự bất kỳ
     Page<Product> findByProductNameContaining(String keyword, Pageable pageDetails);
 
@@ -16,4 +24,62 @@ public interface ProductRepo extends JpaRepository<Product, Long> {
 
     // Tìm kiếm sản phẩm theo categoryId
     Page<Product> findByCategoryCategoryId(Long categoryId, Pageable pageable);
-}
\ No newline at end of file
+
+    // Catalog listings: fetch the category in the same query and never touch cart_items
+    @Query(value = "SELECT p FROM Product p LEFT JOIN FETCH p.category",
+            countQuery = "SELECT COUNT(p) FROM Product p")
+    Page<Product> findCatalogPage(Pageable pageable);
+
+    @Query(value = "SELECT p FROM Product p LEFT JOIN FETCH p.category c WHERE c.categoryId = ?1",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.category.categoryId = ?1")
+    Page<Product> findCatalogPageByCategory(Long categoryId, Pageable pageable);
+
+    @Query(value = "SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.discount > ?1",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.discount > ?1")
+    Page<Product> findCatalogPageByDiscountGreaterThan(double discount, Pageable pageable);
+
+    // Scalar rows for the in-memory indexes, read in productId order one batch at a time
+    @Query("SELECT p.productId, p.productName, p.description, c.categoryId, p.price, p.discount, p.specialPrice "
+            + "FROM Product p LEFT JOIN p.category c WHERE p.productId > ?1 ORDER BY p.productId")
+    List<Object[]> findIndexRowsAfter(Long lastProductId, Pageable pageable);
+
+    @Query("SELECT p.productId, c.categoryId, p.specialPrice, p.discount, p.quantity "
+            + "FROM Product p LEFT JOIN p.category c WHERE p.productId > ?1 ORDER BY p.productId")
+    List<Object[]> findFacetRowsAfter(Long lastProductId, Pageable pageable);
+
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.productId IN ?1")
+    List<Product> findAllWithCategoryByIdIn(Collection<Long> productIds);
+
+    // Locks in productId order, the order batched stock updates take
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.productId IN ?1 ORDER BY p.productId")
+    List<Product> lockAllById(Collection<Long> productIds);
+
+    long countByCategoryCategoryId(Long categoryId);
+
+    @Query("SELECT p.productId FROM Product p WHERE p.category.categoryId = ?1 ORDER BY p.productId")
+    List<Long> findIdsByCategoryId(Long categoryId, Pageable pageable);
+
+    @Query("SELECT p.image FROM Product p WHERE p.productId IN ?1")
+    List<String> findImagesByProductIds(Collection<Long> productIds);
+
+    @Modifying
+    @Query("DELETE FROM Product p WHERE p.productId IN ?1")
+    int deleteAllByProductIds(Collection<Long> productIds);
+
+    boolean existsByFingerprint(String fingerprint);
+
+    boolean existsByFingerprintAndProductIdNot(String fingerprint, Long productId);
+
+    @Query("SELECT p.quantity FROM Product p WHERE p.productId = ?1")
+    Integer findQuantityById(Long productId);
+
+    // Conditional decrement: returns 0 instead of overselling when stock is short
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.quantity = p.quantity - ?2 WHERE p.productId = ?1 AND p.quantity >= ?2")
+    int reserveStock(Long productId, int quantity);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.quantity = COALESCE(p.quantity, 0) + ?2 WHERE p.productId = ?1")
+    int releaseStock(Long productId, int quantity);
+}
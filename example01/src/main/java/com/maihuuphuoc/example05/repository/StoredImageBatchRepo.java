@@ -0,0 +1,30 @@
+package com.maihuuphuoc.example05.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import jakarta.transaction.Transactional;
+
+public interface StoredImageBatchRepo {
+
+    /**
+     * Records a freshly stored file with no users yet, or marks an existing one
+     * as just uploaded again. Commits on its own, before the file is moved into
+     * place, so a caller that rolls back leaves an unused row the sweeper
+     * removes together with the file, never a file without a row.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    void register(String fileName);
+
+    /** Counts one more product or blog using the file. */
+    void retain(String fileName);
+
+    /** Counts one user less; the count never drops below zero. */
+    void release(String fileName);
+
+    /** Up to {@code limit} files nobody has used since the cutoff. */
+    List<String> findReleasedBefore(LocalDateTime cutoff, int limit);
+
+    /** Deletes the row if the file is still unused since the cutoff; returns whether it did. */
+    boolean deleteIfReleased(String fileName, LocalDateTime cutoff);
+}
@@ -0,0 +1,74 @@
+package com.maihuuphuoc.example05.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Plain statements so that concurrent uploads of the same content settle on the primary key
+public class StoredImageBatchRepoImpl implements StoredImageBatchRepo {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO stored_images (file_name, reference_count, updated_at) VALUES (?, ?, ?)";
+
+    private static final String TOUCH_SQL = "UPDATE stored_images SET updated_at = ? WHERE file_name = ?";
+
+    private static final String RETAIN_SQL =
+            "UPDATE stored_images SET reference_count = reference_count + 1, updated_at = ? WHERE file_name = ?";
+
+    private static final String RELEASE_SQL =
+            "UPDATE stored_images SET reference_count = reference_count - 1, updated_at = ? "
+                    + "WHERE file_name = ? AND reference_count > 0";
+
+    private static final String RELEASED_SQL =
+            "SELECT file_name FROM stored_images WHERE reference_count = 0 AND updated_at < ? LIMIT ?";
+
+    private static final String DELETE_RELEASED_SQL =
+            "DELETE FROM stored_images WHERE file_name = ? AND reference_count = 0 AND updated_at < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void register(String fileName) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (jdbcTemplate.update(TOUCH_SQL, now, fileName) == 0) {
+            insertOr(fileName, 0, TOUCH_SQL, now);
+        }
+    }
+
+    @Override
+    public void retain(String fileName) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (jdbcTemplate.update(RETAIN_SQL, now, fileName) == 0) {
+            insertOr(fileName, 1, RETAIN_SQL, now);
+        }
+    }
+
+    @Override
+    public void release(String fileName) {
+        jdbcTemplate.update(RELEASE_SQL, Timestamp.valueOf(LocalDateTime.now()), fileName);
+    }
+
+    @Override
+    public List<String> findReleasedBefore(LocalDateTime cutoff, int limit) {
+        return jdbcTemplate.queryForList(RELEASED_SQL, String.class, Timestamp.valueOf(cutoff), limit);
+    }
+
+    @Override
+    public boolean deleteIfReleased(String fileName, LocalDateTime cutoff) {
+        return jdbcTemplate.update(DELETE_RELEASED_SQL, fileName, Timestamp.valueOf(cutoff)) > 0;
+    }
+
+    // Another upload may insert the same row in between; then the update applies to its row
+    private void insertOr(String fileName, int referenceCount, String updateSql, Timestamp now) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, fileName, referenceCount, now);
+        } catch (DuplicateKeyException e) {
+            jdbcTemplate.update(updateSql, now, fileName);
+        }
+    }
+}
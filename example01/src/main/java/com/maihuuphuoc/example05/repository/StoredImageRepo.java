@@ -0,0 +1,10 @@
+package com.maihuuphuoc.example05.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.maihuuphuoc.example05.entity.StoredImage;
+
+@Repository
+public interface StoredImageRepo extends JpaRepository<StoredImage, String>, StoredImageBatchRepo {
+}
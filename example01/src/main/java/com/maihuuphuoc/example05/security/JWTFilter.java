@@ -5,11 +5,11 @@ import java.io.IOException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.maihuuphuoc.example05.config.UserInfoConfig;
 import com.maihuuphuoc.example05.service.impl.UserDetailsServiceImpl;
 
 import jakarta.servlet.FilterChain;
@@ -26,6 +26,9 @@ public class JWTFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsServiceImpl userDetailsServiceImpl;
 
+    @Autowired
+    private TokenCache tokenCache;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
@@ -57,8 +60,9 @@ public class JWTFilter extends OncePerRequestFilter {
             }
 
             try {
-                String email = jwtUtil.validateTokenAndRetrieveSubject(jwt);
-                UserDetails userDetails = userDetailsServiceImpl.loadUserByUsername(email);
+                UserInfoConfig userDetails = tokenCache.get(jwt, token -> (UserInfoConfig) userDetailsServiceImpl
+                        .loadUserByUsername(jwtUtil.validateTokenAndRetrieveSubject(token)));
+                String email = userDetails.getEmail();
 
                 UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
@@ -12,30 +12,41 @@ import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.JWTVerifier;
 
+import jakarta.annotation.PostConstruct;
+
 @Component
 public class JWTUtil {
 
     @Value("${jwt_secret}")
     private String secret;
 
+    private Algorithm algorithm;
+
+    // JWTVerifier là thread-safe nên chỉ cần build một lần
+    private JWTVerifier verifier;
+
+    @PostConstruct
+    public void init() {
+        algorithm = Algorithm.HMAC256(secret);
+        verifier = JWT.require(algorithm)
+                .withSubject("User Details")
+                .withIssuer("Event Scheduler").build();
+    }
+
     public String generateToken(String email) throws IllegalArgumentException, JWTCreationException {
         return JWT.create()
                 .withSubject("User Details")
                 .withClaim("email", email)
                 .withIssuedAt(new Date())
                 .withIssuer("Event Scheduler")
-                .sign(Algorithm.HMAC256(secret));
+                .sign(algorithm);
 
     }
 
     public String validateTokenAndRetrieveSubject(String token) throws JWTVerificationException {
-        JWTVerifier verifier = JWT.require(Algorithm.HMAC256(secret))
-                .withSubject("User Details")
-                .withIssuer("Event Scheduler").build();
-
         DecodedJWT jwt = verifier.verify(token);
         return jwt.getClaim("email").asString();
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package com.maihuuphuoc.example05.security;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.config.UserInfoConfig;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Bounded cache of already verified JWT tokens and the principal they resolve
+ * to, so that repeated requests with the same token skip both the signature
+ * check and the user lookup. Entries expire after a fixed TTL and are dropped
+ * explicitly whenever the owning user changes.
+ */
+@Component
+public class TokenCache {
+
+    @Value("${jwt.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${jwt.cache.ttl-minutes:10}")
+    private long ttlMinutes;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, UserInfoConfig> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwtTokens");
+    }
+
+    public UserInfoConfig get(String token, Function<String, UserInfoConfig> loader) {
+        return cache.get(token, loader);
+    }
+
+    /**
+     * Drops every cached token of the given user. When called inside a
+     * transaction the eviction is repeated after commit, so a concurrent request
+     * cannot re-cache the old state between the update and the commit.
+     */
+    public void evictUser(String email) {
+        if (email == null) {
+            return;
+        }
+        TransactionHooks.nowAndAfterCommit(() -> removeUser(email));
+    }
+
+    private void removeUser(String email) {
+        cache.asMap().values().removeIf(user -> email.equals(user.getEmail()));
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+}
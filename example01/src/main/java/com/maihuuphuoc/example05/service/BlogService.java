@@ -5,7 +5,7 @@ import com.maihuuphuoc.example05.payloads.BlogResponse;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.nio.file.Path;
 
 public interface BlogService {
     BlogDTO createBlog(BlogDTO blogDTO, String userEmail, MultipartFile image);
@@ -14,5 +14,5 @@ public interface BlogService {
     BlogDTO updateBlog(Long id, BlogDTO blogDTO);
     BlogDTO updateBlogImage(Long id, MultipartFile image);
     void deleteBlog(Long id);
-    InputStream getBlogImage(String fileName) throws FileNotFoundException;
+    Path getBlogImage(String fileName, String size) throws FileNotFoundException;
 }
\ No newline at end of file
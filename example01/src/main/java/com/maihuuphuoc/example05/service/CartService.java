@@ -1,20 +1,30 @@
 package com.maihuuphuoc.example05.service;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.maihuuphuoc.example05.payloads.CartDTO;
+import com.maihuuphuoc.example05.payloads.CartLineDTO;
 
 public interface CartService {
     CartDTO addProductToCart(Long cartId, Long productId, Integer quantity);
 
     List<CartDTO> getAllCarts();
 
+    List<CartDTO> getCarts(Integer pageNumber, Integer pageSize);
+
+    void streamAllCarts(Consumer<CartDTO> sink);
+
     CartDTO getCart(String emailId, Long cartId);
 
     CartDTO updateProductQuantityInCart(Long cartId, Long productId, Integer quantity);
 
+    CartDTO updateCartLines(Long cartId, List<CartLineDTO> lines);
+
     void updateProductInCarts(Long cartId, Long productId);
 
+    int repriceProductInCarts(Long productId, double newPrice);
+
     String deleteProductFromCart(Long cartId, Long productId);
 
     CartDTO createNewCart(String email);
@@ -2,12 +2,23 @@ package com.maihuuphuoc.example05.service;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
 
 import org.springframework.web.multipart.MultipartFile;
 
 public interface FileService {
     String uploadImage(String path, MultipartFile file) throws IOException;
 
-    InputStream getResource(String path, String fileName) throws FileNotFoundException;
+    /**
+     * Resolves an uploaded file, or its variant of the given size, inside the
+     * folder. A variant that was not written yet falls back to the original; a
+     * missing file or a name leaving the folder is not found.
+     */
+    Path getImagePath(String path, String fileName, String size) throws FileNotFoundException;
+
+    /** Counts a product or blog starting to use the stored image; other names are ignored. */
+    void retainImage(String fileName);
+
+    /** Counts a product or blog no longer using the stored image; other names are ignored. */
+    void releaseImage(String fileName);
 }
\ No newline at end of file
@@ -14,6 +14,9 @@ public interface OrderService {
 
     OrderResponse getAllOrders(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
+    OrderResponse getAllOrdersByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+            boolean withCount);
+
     OrderDTO updateOrder(String emailId, Long orderId, String orderStatus);
 
     OrderDTO getOrderById(Long orderId);
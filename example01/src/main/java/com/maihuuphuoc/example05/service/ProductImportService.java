@@ -0,0 +1,14 @@
+package com.maihuuphuoc.example05.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.maihuuphuoc.example05.payloads.ProductImportReport;
+
+public interface ProductImportService {
+    enum Format {
+        CSV, NDJSON
+    }
+
+    ProductImportReport importProducts(InputStream body, Format format) throws IOException;
+}
@@ -2,11 +2,15 @@ package com.maihuuphuoc.example05.service;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
 import org.springframework.web.multipart.MultipartFile;
 import com.maihuuphuoc.example05.entity.Product;
 import com.maihuuphuoc.example05.payloads.ProductDTO;
 import com.maihuuphuoc.example05.payloads.ProductResponse;
+import com.maihuuphuoc.example05.payloads.SuggestionDTO;
 
 public interface ProductService {
         ProductResponse getPromotionProducts(int pageNumber, int pageSize, String sortBy, String sortOrder);
@@ -15,6 +19,20 @@ public interface ProductService {
 
         ProductResponse getAllProducts(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
+        ProductResponse getAllProductsByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+                        boolean withCount);
+
+        void exportProducts(Long categoryId, Consumer<ProductDTO> sink);
+
+        List<SuggestionDTO> suggest(String query, int limit);
+
+        List<ProductDTO> getRelatedProducts(Long productId, int limit);
+
+        ProductResponse getBestSellers(Long categoryId, boolean recent, Integer pageNumber, Integer pageSize);
+
+        ProductResponse filterProducts(List<Long> categoryIds, Double minPrice, Double maxPrice, Double minDiscount,
+                        Boolean inStock, Integer pageNumber, Integer pageSize);
+
         ProductResponse searchByCategory(Long categoryId, Integer pageNumber, Integer pageSize, String sortBy,
                         String sortOrder);
 
@@ -22,7 +40,7 @@ public interface ProductService {
 
         ProductDTO updateProductImage(Long productId, MultipartFile image) throws IOException;
 
-        public InputStream getProductImage(String fileName) throws FileNotFoundException;
+        public Path getProductImage(String fileName, String size) throws FileNotFoundException;
 
         ProductResponse searchProductByKeyword(String keyword, Long categoryId, Integer pageNumber, Integer pageSize,
                         String sortBy,
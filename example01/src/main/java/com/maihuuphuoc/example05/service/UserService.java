@@ -9,6 +9,9 @@ public interface UserService {
 
     UserResponse getAllUsers(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder);
 
+    UserResponse getAllUsersByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+            boolean withCount);
+
     UserDTO getUserById(Long userId);
 
     UserDTO updateUser(Long userId, UserDTO userDTO);
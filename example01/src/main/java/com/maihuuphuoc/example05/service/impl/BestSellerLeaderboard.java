@@ -0,0 +1,394 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.repository.OrderItemRepo;
+
+/**
+ * Best sellers overall and per category, by all-time units and by units of
+ * the last {@code product.bestsellers.window-days} days. Every sold product
+ * keeps one bucket per day of the window in a ring, and sits in ranked sets
+ * that are updated as orders commit, so a page of the leaderboard is read
+ * straight from memory. When the date changes the window totals are
+ * recomputed from the buckets and the recent rankings rebuilt once.
+ * <p>
+ * At startup the order history is summed up to the highest order id at that
+ * moment; only orders after it are counted by their commit hooks, so an order
+ * committing during the rebuild is never counted twice. Deleted orders are
+ * taken back out.
+ */
+@Component
+public class BestSellerLeaderboard {
+    private static final Logger logger = LoggerFactory.getLogger(BestSellerLeaderboard.class);
+
+    /** A page of productIds, best first, and how many products the ranking holds. */
+    public record Page(long total, List<Long> productIds) {
+    }
+
+    private final class Seller {
+        private final long productId;
+        private Long categoryId;
+        private long units;
+        private long recentUnits;
+        // Units per day; bucketDays holds the epoch day each bucket counts
+        private final long[] buckets = new long[windowDays];
+        private final long[] bucketDays = new long[windowDays];
+
+        Seller(long productId) {
+            this.productId = productId;
+            Arrays.fill(bucketDays, Long.MIN_VALUE);
+        }
+
+        void add(long day, long quantity) {
+            units += quantity;
+            addDay(day, quantity);
+        }
+
+        // Counts the units towards the window only
+        void addDay(long day, long quantity) {
+            if (inWindow(day)) {
+                int slot = (int) Math.floorMod(day, (long) windowDays);
+                if (bucketDays[slot] != day) {
+                    bucketDays[slot] = day;
+                    buckets[slot] = 0;
+                }
+                buckets[slot] += quantity;
+                recentUnits += quantity;
+            }
+        }
+
+        // Takes back units counted earlier; a day already out of the window has nothing left to undo
+        void subtract(long day, long quantity) {
+            units -= quantity;
+            int slot = (int) Math.floorMod(day, (long) windowDays);
+            if (inWindow(day) && bucketDays[slot] == day) {
+                buckets[slot] -= quantity;
+                recentUnits -= quantity;
+            }
+        }
+
+        void roll() {
+            recentUnits = 0;
+            for (int slot = 0; slot < windowDays; slot++) {
+                if (inWindow(bucketDays[slot])) {
+                    recentUnits += buckets[slot];
+                }
+            }
+        }
+    }
+
+    private static final Comparator<Seller> BY_UNITS = Comparator.<Seller>comparingLong(seller -> -seller.units)
+            .thenComparingLong(seller -> seller.productId);
+
+    private static final Comparator<Seller> BY_RECENT_UNITS = Comparator
+            .<Seller>comparingLong(seller -> -seller.recentUnits)
+            .thenComparingLong(seller -> seller.productId);
+
+    @Value("${product.bestsellers.window-days:7}")
+    private int windowDays;
+
+    @Value("${product.bestsellers.rebuild-parallelism:4}")
+    private int parallelism;
+
+    @Autowired
+    private OrderItemRepo orderItemRepo;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final Map<Long, Seller> sellers = new HashMap<>();
+    private final NavigableSet<Seller> byUnits = new TreeSet<>(BY_UNITS);
+    private final NavigableSet<Seller> byRecentUnits = new TreeSet<>(BY_RECENT_UNITS);
+    private final Map<Long, NavigableSet<Seller>> categoryByUnits = new HashMap<>();
+    private final Map<Long, NavigableSet<Seller>> categoryByRecentUnits = new HashMap<>();
+    private long today = LocalDate.now().toEpochDay();
+    // Orders up to this id are counted by rebuild(), later ones by recordSales; nothing before the rebuild starts
+    private long rebuiltThrough = Long.MAX_VALUE;
+    private boolean rebuilt;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long watermark;
+        // Held while the watermark is read, so no order after it commits unseen by both the scan and the hooks
+        lock.writeLock().lock();
+        try {
+            List<Object[]> orders = orderItemRepo.findOrderIdRangeAfter(0L);
+            watermark = orders.isEmpty() || orders.get(0)[1] == null ? 0L : (Long) orders.get(0)[1];
+            rebuiltThrough = watermark;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<Object[]> range = orderItemRepo.findSoldProductIdRange();
+        if (range.isEmpty() || range.get(0)[0] == null) {
+            markRebuilt();
+            return;
+        }
+        long first = (Long) range.get(0)[0];
+        long last = (Long) range.get(0)[1];
+        roll();
+        LocalDate since = LocalDate.now().minusDays(windowDays - 1);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "bestsellers-rebuild-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long span = last - first + 1;
+            long step = (span + parallelism - 1) / parallelism;
+            List<CompletableFuture<Void>> parts = new ArrayList<>();
+            for (long from = first; from <= last; from += step) {
+                long after = from - 1;
+                long to = Math.min(last, from + step - 1);
+                parts.add(CompletableFuture.runAsync(() -> load(after, to, watermark, since), workers));
+            }
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            workers.shutdown();
+        }
+        markRebuilt();
+        lock.readLock().lock();
+        try {
+            logger.info("Best seller leaderboard built: {} products up to order {} in {} ms", sellers.size(),
+                    watermark, System.currentTimeMillis() - start);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a page of the best sellers of the category, or of the whole
+     * catalog when categoryId is null, ranked by recent or all-time units.
+     */
+    public Page query(Long categoryId, boolean recent, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Seller> ranking = categoryId == null
+                    ? (recent ? byRecentUnits : byUnits)
+                    : (recent ? categoryByRecentUnits : categoryByUnits).get(categoryId);
+            if (ranking == null) {
+                return new Page(0, List.of());
+            }
+            List<Long> productIds = new ArrayList<>(limit);
+            int position = 0;
+            for (Seller seller : ranking) {
+                if (position++ < offset) {
+                    continue;
+                }
+                if (productIds.size() == limit) {
+                    break;
+                }
+                productIds.add(seller.productId);
+            }
+            return new Page(ranking.size(), productIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Adds the units of a placed order once it commits; categoryIds maps each product to its category. */
+    public void recordSales(Long orderId, LocalDate orderDate, Map<Long, Integer> quantities,
+            Map<Long, Long> categoryIds) {
+        long day = orderDate.toEpochDay();
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                if (orderId <= rebuiltThrough) {
+                    return;
+                }
+                advanceTo(Math.max(day, LocalDate.now().toEpochDay()));
+                quantities.forEach((productId, quantity) -> add(productId, categoryIds.get(productId), day,
+                        quantity));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /** Takes the units of a deleted order back out once the deletion commits. */
+    public void removeSales(Long orderId, LocalDate orderDate, Map<Long, Integer> quantities) {
+        long day = orderDate.toEpochDay();
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                // Counted neither by a hook nor, as far as can be told while it runs, by the rebuild
+                if (orderId <= rebuiltThrough && !rebuilt) {
+                    return;
+                }
+                quantities.forEach((productId, quantity) -> {
+                    Seller seller = sellers.get(productId);
+                    if (seller == null) {
+                        return;
+                    }
+                    detach(seller);
+                    seller.subtract(day, quantity);
+                    if (seller.units > 0) {
+                        attach(seller);
+                    } else {
+                        sellers.remove(productId);
+                    }
+                });
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void remove(Long productId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                Seller seller = sellers.remove(productId);
+                if (seller != null) {
+                    detach(seller);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // Moves the window forward shortly after midnight even when nothing is sold
+    @Scheduled(fixedDelayString = "${product.bestsellers.roll-interval-ms:60000}")
+    public void roll() {
+        long now = LocalDate.now().toEpochDay();
+        lock.writeLock().lock();
+        try {
+            advanceTo(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markRebuilt() {
+        lock.writeLock().lock();
+        try {
+            rebuilt = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load(long afterProductId, long lastProductId, long lastOrderId, LocalDate since) {
+        List<Object[]> totals = orderItemRepo.sumQuantitiesBetween(afterProductId, lastProductId, lastOrderId);
+        List<Object[]> daily = orderItemRepo.sumDailyQuantitiesBetween(afterProductId, lastProductId, lastOrderId,
+                since);
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : totals) {
+                Seller seller = seller((Long) row[0], (Long) row[1]);
+                detach(seller);
+                seller.units += ((Number) row[2]).longValue();
+                attach(seller);
+            }
+            for (Object[] row : daily) {
+                Seller seller = sellers.get((Long) row[0]);
+                if (seller == null) {
+                    continue;
+                }
+                detach(seller);
+                seller.addDay(((LocalDate) row[1]).toEpochDay(), ((Number) row[2]).longValue());
+                attach(seller);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Long productId, Long categoryId, long day, long quantity) {
+        Seller seller = seller(productId, categoryId);
+        detach(seller);
+        seller.categoryId = categoryId;
+        seller.add(day, quantity);
+        attach(seller);
+    }
+
+    private Seller seller(Long productId, Long categoryId) {
+        Seller seller = sellers.get(productId);
+        if (seller == null) {
+            seller = new Seller(productId);
+            seller.categoryId = categoryId;
+            sellers.put(productId, seller);
+        }
+        return seller;
+    }
+
+    // A seller must leave the ranked sets before its counts change, or they cannot find it again
+    private void detach(Seller seller) {
+        byUnits.remove(seller);
+        byRecentUnits.remove(seller);
+        if (seller.categoryId != null) {
+            removeFrom(categoryByUnits, seller);
+            removeFrom(categoryByRecentUnits, seller);
+        }
+    }
+
+    private void attach(Seller seller) {
+        byUnits.add(seller);
+        if (seller.categoryId != null) {
+            categoryByUnits.computeIfAbsent(seller.categoryId, id -> new TreeSet<>(BY_UNITS)).add(seller);
+        }
+        if (seller.recentUnits > 0) {
+            byRecentUnits.add(seller);
+            if (seller.categoryId != null) {
+                categoryByRecentUnits.computeIfAbsent(seller.categoryId, id -> new TreeSet<>(BY_RECENT_UNITS))
+                        .add(seller);
+            }
+        }
+    }
+
+    private void removeFrom(Map<Long, NavigableSet<Seller>> rankings, Seller seller) {
+        NavigableSet<Seller> ranking = rankings.get(seller.categoryId);
+        if (ranking != null && ranking.remove(seller) && ranking.isEmpty()) {
+            rankings.remove(seller.categoryId);
+        }
+    }
+
+    private void advanceTo(long day) {
+        if (day <= today) {
+            return;
+        }
+        today = day;
+        byRecentUnits.clear();
+        categoryByRecentUnits.clear();
+        for (Seller seller : sellers.values()) {
+            seller.roll();
+            if (seller.recentUnits > 0) {
+                byRecentUnits.add(seller);
+                if (seller.categoryId != null) {
+                    categoryByRecentUnits.computeIfAbsent(seller.categoryId, id -> new TreeSet<>(BY_RECENT_UNITS))
+                            .add(seller);
+                }
+            }
+        }
+    }
+
+    private boolean inWindow(long day) {
+        return day > today - windowDays && day <= today;
+    }
+}
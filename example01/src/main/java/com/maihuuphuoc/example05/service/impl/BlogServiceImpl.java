@@ -21,8 +21,9 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Service
@@ -63,6 +64,7 @@ public class BlogServiceImpl implements BlogService {
             throw new APIException("Failed to upload image: " + e.getMessage());
         }
         Blog savedBlog = blogRepo.save(blog);
+        fileService.retainImage(savedBlog.getImage());
         BlogDTO savedBlogDTO = modelMapper.map(savedBlog, BlogDTO.class);
         savedBlogDTO.setAuthorEmail(author.getEmail());
         return savedBlogDTO;
@@ -108,11 +110,16 @@ public class BlogServiceImpl implements BlogService {
                 .orElseThrow(() -> new ResourceNotFoundException("Blog", "id", id));
         blog.setTitle(blogDTO.getTitle());
         blog.setContent(blogDTO.getContent());
+        String previousImage = blog.getImage();
         // Giữ nguyên image nếu không được cung cấp trong blogDTO
         if (blogDTO.getImage() != null) {
             blog.setImage(blogDTO.getImage());
         }
         Blog updatedBlog = blogRepo.save(blog);
+        if (!Objects.equals(updatedBlog.getImage(), previousImage)) {
+            fileService.retainImage(updatedBlog.getImage());
+            fileService.releaseImage(previousImage);
+        }
         BlogDTO updatedBlogDTO = modelMapper.map(updatedBlog, BlogDTO.class);
         updatedBlogDTO.setAuthorEmail(blog.getAuthor().getEmail());
         return updatedBlogDTO;
@@ -122,6 +129,7 @@ public class BlogServiceImpl implements BlogService {
     public BlogDTO updateBlogImage(Long id, MultipartFile image) {
         Blog blog = blogRepo.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Blog", "id", id));
+        String previousImage = blog.getImage();
         try {
             if (image != null && !image.isEmpty()) {
                 String fileName = fileService.uploadImage(path, image);
@@ -133,6 +141,8 @@ public class BlogServiceImpl implements BlogService {
             throw new APIException("Failed to upload image: " + e.getMessage());
         }
         Blog updatedBlog = blogRepo.save(blog);
+        fileService.retainImage(updatedBlog.getImage());
+        fileService.releaseImage(previousImage);
         BlogDTO updatedBlogDTO = modelMapper.map(updatedBlog, BlogDTO.class);
         updatedBlogDTO.setAuthorEmail(blog.getAuthor().getEmail());
         return updatedBlogDTO;
@@ -143,10 +153,11 @@ public class BlogServiceImpl implements BlogService {
         Blog blog = blogRepo.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Blog", "id", id));
         blogRepo.delete(blog);
+        fileService.releaseImage(blog.getImage());
     }
 
     @Override
-    public InputStream getBlogImage(String fileName) throws FileNotFoundException {
-        return fileService.getResource(path, fileName);
+    public Path getBlogImage(String fileName, String size) throws FileNotFoundException {
+        return fileService.getImagePath(path, fileName, size);
     }
 }
\ No newline at end of file
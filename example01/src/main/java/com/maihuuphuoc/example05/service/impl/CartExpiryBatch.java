@@ -0,0 +1,87 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.entity.Cart;
+import com.maihuuphuoc.example05.repository.CartItemRepo;
+import com.maihuuphuoc.example05.repository.CartRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Empties one batch of idle carts in a short transaction: lock the products
+ * the carts hold, then the carts that are still idle, give their units back
+ * with one batched stock update, then delete their lines and reset their
+ * totals with one statement each. Products are locked before carts, as every
+ * shopper's change does.
+ */
+@Transactional
+@Component
+public class CartExpiryBatch {
+
+    public record Result(int carts, long units) {
+    }
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Autowired
+    private CartItemRepo cartItemRepo;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private InventoryReservations reservations;
+
+    @Autowired
+    private CartSnapshotCache cartSnapshots;
+
+    public Result expire(List<Long> cartIds, LocalDateTime idleSince) {
+        // Shoppers lock the product before the cart; the sweep does the same so the two cannot deadlock
+        Map<Long, Integer> quantities = sumQuantities(cartIds);
+        if (quantities.isEmpty()) {
+            return new Result(0, 0);
+        }
+        productRepo.lockAllById(quantities.keySet());
+
+        List<Long> idleCartIds = cartRepo.lockIdleCarts(cartIds, idleSince).stream()
+                .map(Cart::getCartId)
+                .toList();
+        if (idleCartIds.isEmpty()) {
+            return new Result(0, 0);
+        }
+        Map<Long, Integer> locked = quantities;
+        quantities = sumQuantities(idleCartIds);
+        if (!locked.keySet().containsAll(quantities.keySet())) {
+            // A product was added between the two reads and is not locked; the next sweep retries
+            return new Result(0, 0);
+        }
+
+        long units = 0;
+        for (int quantity : quantities.values()) {
+            units += quantity;
+        }
+        reservations.releaseAll(quantities);
+
+        cartItemRepo.deleteAllByCartIds(idleCartIds);
+        cartRepo.resetTotals(idleCartIds);
+        idleCartIds.forEach(cartSnapshots::evict);
+        return new Result(idleCartIds.size(), units);
+    }
+
+    private Map<Long, Integer> sumQuantities(List<Long> cartIds) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (Object[] row : cartItemRepo.sumQuantitiesByProduct(cartIds)) {
+            quantities.put((Long) row[0], row[1] != null ? ((Number) row[1]).intValue() : 0);
+        }
+        return quantities;
+    }
+}
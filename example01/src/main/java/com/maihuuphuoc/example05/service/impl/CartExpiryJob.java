@@ -0,0 +1,137 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.repository.CartRepo;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Stock is reserved as soon as a product enters a cart. This job gives it back
+ * for carts nobody has touched for {@code cart.reservation.ttl-minutes}. The
+ * idle cart id range is split between {@code cart.sweep.parallelism} workers,
+ * and each worker expires its part in batches of {@code cart.sweep.batch-size}
+ * carts, one short transaction per batch.
+ */
+@Component
+public class CartExpiryJob {
+    private static final Logger logger = LoggerFactory.getLogger(CartExpiryJob.class);
+
+    @Value("${cart.reservation.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${cart.sweep.batch-size:200}")
+    private int batchSize;
+
+    @Value("${cart.sweep.parallelism:4}")
+    private int parallelism;
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Autowired
+    private CartExpiryBatch expiryBatch;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ExecutorService workers;
+
+    private Counter cartsExpired;
+
+    private Counter unitsReleased;
+
+    private Timer sweepTimer;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "cart-sweep-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        cartsExpired = Counter.builder("carts.expired")
+                .description("Idle carts emptied by the sweeper")
+                .register(meterRegistry);
+        unitsReleased = Counter.builder("carts.expired.units")
+                .description("Stock units returned from idle carts")
+                .register(meterRegistry);
+        sweepTimer = Timer.builder("carts.sweep")
+                .description("Duration of an idle cart sweep")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${cart.reservation.sweep-interval-ms:60000}")
+    public void expireIdleCarts() {
+        sweepTimer.record(this::sweep);
+    }
+
+    private void sweep() {
+        LocalDateTime idleSince = LocalDateTime.now().minusMinutes(ttlMinutes);
+        List<Object[]> range = cartRepo.findIdleCartIdRange(idleSince);
+        if (range.isEmpty() || range.get(0)[0] == null) {
+            return;
+        }
+        long first = (Long) range.get(0)[0];
+        long last = (Long) range.get(0)[1];
+
+        long span = last - first + 1;
+        long step = (span + parallelism - 1) / parallelism;
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        for (long from = first; from <= last; from += step) {
+            long after = from - 1;
+            long to = Math.min(last, from + step - 1);
+            parts.add(CompletableFuture.runAsync(() -> sweepRange(idleSince, after, to), workers));
+        }
+        CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void sweepRange(LocalDateTime idleSince, long afterCartId, long lastCartId) {
+        long cursor = afterCartId;
+        while (true) {
+            List<Long> cartIds = cartRepo.findIdleCartIdsBetween(idleSince, cursor, lastCartId,
+                    PageRequest.of(0, batchSize));
+            if (cartIds.isEmpty()) {
+                return;
+            }
+            cursor = cartIds.get(cartIds.size() - 1);
+            try {
+                CartExpiryBatch.Result result = expiryBatch.expire(cartIds, idleSince);
+                cartsExpired.increment(result.carts());
+                unitsReleased.increment(result.units());
+                if (result.carts() > 0) {
+                    logger.info("Expired {} idle carts up to cart {}, released {} units", result.carts(), cursor,
+                            result.units());
+                }
+            } catch (RuntimeException e) {
+                // Sweeps and shoppers lock in the same order, so this is a bug or an outage, not contention.
+                // The carts stay idle and are picked up again next sweep
+                logger.error("Could not expire idle carts {}..{}", cartIds.get(0), cursor, e);
+            }
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package com.maihuuphuoc.example05.service.impl;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import com.maihuuphuoc.example05.entity.Cart;
@@ -13,9 +20,12 @@ import com.maihuuphuoc.example05.entity.Product;
 import com.maihuuphuoc.example05.entity.User;
 import com.maihuuphuoc.example05.exceptions.APIException;
 import com.maihuuphuoc.example05.exceptions.ResourceNotFoundException;
+import com.maihuuphuoc.example05.mapper.DTOMapper;
 import com.maihuuphuoc.example05.payloads.CartDTO;
+import com.maihuuphuoc.example05.payloads.CartLineDTO;
 import com.maihuuphuoc.example05.payloads.ProductDTO;
 import com.maihuuphuoc.example05.repository.CartItemRepo;
+import com.maihuuphuoc.example05.repository.CartLineRow;
 import com.maihuuphuoc.example05.repository.CartRepo;
 import com.maihuuphuoc.example05.repository.ProductRepo;
 import com.maihuuphuoc.example05.repository.UserRepo;
@@ -44,7 +54,13 @@ public class CartServiceImpl implements CartService {
     private UserRepo userRepo;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DTOMapper dtoMapper;
+
+    @Autowired
+    private InventoryReservations reservations;
+
+    @Autowired
+    private CartSnapshotCache cartSnapshots;
 
     @Override
     public CartDTO addProductToCart(Long cartId, Long productId, Integer quantity) {
@@ -53,14 +69,7 @@ public class CartServiceImpl implements CartService {
         Product product = productRepo.findById(productId)
                 .orElseThrow(() -> new ResourceNotFoundException("Product", "productId", productId));
 
-        if (product.getQuantity() == null || product.getQuantity() == 0) {
-            throw new APIException(product.getProductName() + " is not available");
-        }
-
-        if (product.getQuantity() < quantity) {
-            throw new APIException("Please, make an order of the " + product.getProductName()
-                    + " less than or equal to the quantity " + product.getQuantity() + ".");
-        }
+        reservations.reserve(product, quantity);
 
         CartItem cartItem = cartItemRepo.findCartItemByProductIdAndCartId(cartId, productId);
         if (cartItem != null) {
@@ -76,92 +85,76 @@ public class CartServiceImpl implements CartService {
             newCartItem.setQuantity(quantity);
             newCartItem.setDiscount(product.getDiscount());
             newCartItem.setProductPrice(product.getSpecialPrice());
-            cartItemRepo.save(newCartItem);
+            cartItem = cartItemRepo.save(newCartItem);
         }
 
-        product.setQuantity(product.getQuantity() - quantity);
         cart.setTotalPrice(cart.getTotalPrice() + (product.getSpecialPrice() * quantity));
 
         cartRepo.save(cart);
 
-        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-        List<ProductDTO> productDTOS = cart.getCartItems().stream()
-                .map(item -> {
-                    ProductDTO productDTO = modelMapper.map(item.getProduct(), ProductDTO.class);
-                    productDTO.setCartItemQuantity(item.getQuantity() != null ? item.getQuantity() : 0);
-                    productDTO.setStock(item.getProduct().getQuantity() != null ? item.getProduct().getQuantity() : 0);
-                    return productDTO;
-                }).collect(Collectors.toList());
-        cartDTO.setProducts(productDTOS);
-        int totalQuantity = cart.getCartItems().stream()
-                .mapToInt(item -> item.getQuantity() != null ? item.getQuantity() : 0)
-                .sum();
-        cartDTO.setQuantity(totalQuantity);
-        return cartDTO;
+        return cartSnapshots.putLine(cart, cartItem).toCartDTO();
     }
 
     @Override
     public List<CartDTO> getAllCarts() {
-        List<User> users = userRepo.findAll(); // Lấy tất cả người dùng
-        List<Cart> carts = users.stream()
-                .map(user -> {
-                    Cart cart = cartRepo.findByUser(user);
-                    if (cart == null) {
-                        // Tạo giỏ hàng mới nếu chưa có
-                        Cart newCart = new Cart();
-                        newCart.setUser(user);
-                        newCart.setTotalPrice(0.0);
-                        return cartRepo.save(newCart);
-                    }
-                    return cart;
-                })
-                .collect(Collectors.toList());
-
-        if (carts.isEmpty()) {
+        List<CartDTO> cartDTOs = new ArrayList<>();
+        streamAllCarts(cartDTOs::add);
+        if (cartDTOs.isEmpty()) {
             throw new APIException("No cart exists");
         }
+        return cartDTOs;
+    }
 
-        return carts.stream().map(cart -> {
-            CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-            cartDTO.setEmail(cart.getUser().getEmail()); // Thêm email vào CartDTO
-            List<ProductDTO> products = cart.getCartItems().stream()
-                    .map(item -> {
-                        ProductDTO productDTO = modelMapper.map(item.getProduct(), ProductDTO.class);
-                        productDTO.setCartItemQuantity(item.getQuantity() != null ? item.getQuantity() : 0);
-                        productDTO.setStock(
-                                item.getProduct().getQuantity() != null ? item.getProduct().getQuantity() : 0);
-                        return productDTO;
-                    }).collect(Collectors.toList());
-            cartDTO.setProducts(products);
-            int totalQuantity = cart.getCartItems().stream()
-                    .mapToInt(item -> item.getQuantity() != null ? item.getQuantity() : 0)
-                    .sum();
-            cartDTO.setQuantity(totalQuantity);
-            return cartDTO;
-        }).collect(Collectors.toList());
+    @Override
+    public List<CartDTO> getCarts(Integer pageNumber, Integer pageSize) {
+        List<Long> cartIds = cartRepo.findCartIds(PageRequest.of(pageNumber, pageSize));
+        List<CartDTO> cartDTOs = new ArrayList<>(cartIds.size());
+        if (!cartIds.isEmpty()) {
+            assembleCarts(cartRepo.findCartLineRows(cartIds).iterator(), cartDTOs::add);
+        }
+        return cartDTOs;
+    }
+
+    @Override
+    public void streamAllCarts(Consumer<CartDTO> sink) {
+        try (Stream<CartLineRow> rows = cartRepo.streamCartLineRows()) {
+            assembleCarts(rows.iterator(), sink);
+        }
+    }
+
+    // Rows arrive ordered by cart, so each cart is complete when the next one starts
+    private void assembleCarts(Iterator<CartLineRow> rows, Consumer<CartDTO> sink) {
+        CartDTO current = null;
+        while (rows.hasNext()) {
+            CartLineRow row = rows.next();
+            if (current == null || !current.getCartId().equals(row.cartId())) {
+                if (current != null) {
+                    sink.accept(current);
+                }
+                current = new CartDTO();
+                current.setCartId(row.cartId());
+                current.setTotalPrice(row.totalPrice());
+                current.setEmail(row.email());
+            }
+            if (row.productId() != null) {
+                ProductDTO productDTO = dtoMapper.toProductDTO(row);
+                current.getProducts().add(productDTO);
+                current.setQuantity(current.getQuantity() + productDTO.getCartItemQuantity());
+            }
+        }
+        if (current != null) {
+            sink.accept(current);
+        }
     }
 
     @Override
     public CartDTO getCart(String emailId, Long cartId) {
-        Cart cart = cartRepo.findCartByEmailAndCartId(emailId, cartId);
-        if (cart == null) {
+        CartSnapshotCache.Snapshot snapshot = cartSnapshots.get(cartId,
+                id -> cartRepo.findCartByEmailAndCartId(emailId, id));
+        if (snapshot == null || !emailId.equalsIgnoreCase(snapshot.email())) {
             throw new ResourceNotFoundException("Cart", "cartId", cartId);
         }
-
-        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-        List<ProductDTO> products = cart.getCartItems().stream()
-                .map(item -> {
-                    ProductDTO productDTO = modelMapper.map(item.getProduct(), ProductDTO.class);
-                    productDTO.setCartItemQuantity(item.getQuantity() != null ? item.getQuantity() : 0);
-                    productDTO.setStock(item.getProduct().getQuantity() != null ? item.getProduct().getQuantity() : 0);
-                    return productDTO;
-                }).collect(Collectors.toList());
-        cartDTO.setProducts(products);
-        int totalQuantity = cart.getCartItems().stream()
-                .mapToInt(item -> item.getQuantity() != null ? item.getQuantity() : 0)
-                .sum();
-        cartDTO.setQuantity(totalQuantity);
-        return cartDTO;
+        return snapshot.toCartDTO();
     }
 
     @Override
@@ -180,6 +173,16 @@ public class CartServiceImpl implements CartService {
         cartItem.setProductPrice(product.getSpecialPrice());
         cart.setTotalPrice(cartPrice + (cartItem.getProductPrice() * cartItem.getQuantity()));
         cartItemRepo.save(cartItem);
+        cartSnapshots.putLine(cart, cartItem);
+    }
+
+    @Override
+    public int repriceProductInCarts(Long productId, double newPrice) {
+        int carts = cartRepo.repriceTotalsForProduct(productId, newPrice);
+        int lines = cartItemRepo.repriceLinesForProduct(productId, newPrice);
+        cartSnapshots.evictProduct(productId);
+        logger.info("Repriced product {} to {} in {} carts ({} lines)", productId, newPrice, carts, lines);
+        return lines;
     }
 
     @Override
@@ -189,42 +192,102 @@ public class CartServiceImpl implements CartService {
         Product product = productRepo.findById(productId)
                 .orElseThrow(() -> new ResourceNotFoundException("Product", "productId", productId));
 
-        if (product.getQuantity() == null || product.getQuantity() == 0) {
-            throw new APIException(product.getProductName() + " is not available");
-        }
-
-        if (product.getQuantity() < quantity) {
-            throw new APIException("Please, make an order of the " + product.getProductName()
-                    + " less than or equal to the quantity " + product.getQuantity() + ".");
-        }
-
         CartItem cartItem = cartItemRepo.findCartItemByProductIdAndCartId(cartId, productId);
         if (cartItem == null) {
             throw new APIException("Product " + product.getProductName() + " not available in the cart!!!");
         }
 
-        double cartPrice = cart.getTotalPrice() - (cartItem.getProductPrice() * cartItem.getQuantity());
-        product.setQuantity(product.getQuantity() + cartItem.getQuantity() - quantity);
+        // Only the difference to what the cart already holds is reserved or released
+        int heldQuantity = cartItem.getQuantity() != null ? cartItem.getQuantity() : 0;
+        if (quantity > heldQuantity) {
+            reservations.reserve(product, quantity - heldQuantity);
+        } else {
+            reservations.release(product, heldQuantity - quantity);
+        }
+
+        double cartPrice = cart.getTotalPrice() - (cartItem.getProductPrice() * heldQuantity);
         cartItem.setProductPrice(product.getSpecialPrice());
         cartItem.setQuantity(quantity);
         cartItem.setDiscount(product.getDiscount());
         cart.setTotalPrice(cartPrice + (cartItem.getProductPrice() * quantity));
         cartItemRepo.save(cartItem);
 
-        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-        List<ProductDTO> productDTOS = cart.getCartItems().stream()
-                .map(item -> {
-                    ProductDTO productDTO = modelMapper.map(item.getProduct(), ProductDTO.class);
-                    productDTO.setCartItemQuantity(item.getQuantity() != null ? item.getQuantity() : 0);
-                    productDTO.setStock(item.getProduct().getQuantity() != null ? item.getProduct().getQuantity() : 0);
-                    return productDTO;
-                }).collect(Collectors.toList());
-        cartDTO.setProducts(productDTOS);
-        int totalQuantity = cart.getCartItems().stream()
-                .mapToInt(item -> item.getQuantity() != null ? item.getQuantity() : 0)
-                .sum();
-        cartDTO.setQuantity(totalQuantity);
-        return cartDTO;
+        return cartSnapshots.putLine(cart, cartItem).toCartDTO();
+    }
+
+    @Override
+    public CartDTO updateCartLines(Long cartId, List<CartLineDTO> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new APIException("No cart lines given");
+        }
+        // The last line for a product wins, as if the lines were sent one by one. Stock is
+        // reserved in productId order, as addStock releases it, so two batches cannot deadlock
+        Map<Long, Integer> targets = new TreeMap<>();
+        for (CartLineDTO line : lines) {
+            if (line.getProductId() == null || line.getQuantity() == null || line.getQuantity() < 0) {
+                throw new APIException("Each cart line needs a productId and a quantity of 0 or more");
+            }
+            targets.put(line.getProductId(), line.getQuantity());
+        }
+
+        Cart cart = cartRepo.findById(cartId)
+                .orElseThrow(() -> new ResourceNotFoundException("Cart", "cartId", cartId));
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productRepo.findAllWithCategoryByIdIn(targets.keySet())) {
+            products.put(product.getProductId(), product);
+        }
+        Map<Long, CartItem> cartItems = new LinkedHashMap<>();
+        for (CartItem cartItem : cartItemRepo.findLinesByCartId(cartId)) {
+            cartItems.put(cartItem.getProduct().getProductId(), cartItem);
+        }
+
+        List<CartItem> changed = new ArrayList<>();
+        List<CartItem> removed = new ArrayList<>();
+        double totalPrice = cart.getTotalPrice();
+        for (Map.Entry<Long, Integer> target : targets.entrySet()) {
+            Long productId = target.getKey();
+            int quantity = target.getValue();
+            Product product = products.get(productId);
+            if (product == null) {
+                throw new ResourceNotFoundException("Product", "productId", productId);
+            }
+
+            CartItem cartItem = cartItems.get(productId);
+            int heldQuantity = cartItem != null && cartItem.getQuantity() != null ? cartItem.getQuantity() : 0;
+            if (quantity > heldQuantity) {
+                reservations.reserve(product, quantity - heldQuantity);
+            } else {
+                reservations.release(product, heldQuantity - quantity);
+            }
+
+            if (cartItem != null) {
+                totalPrice -= cartItem.getProductPrice() * heldQuantity;
+            }
+            if (quantity == 0) {
+                if (cartItem != null) {
+                    removed.add(cartItems.remove(productId));
+                }
+                continue;
+            }
+            if (cartItem == null) {
+                cartItem = new CartItem();
+                cartItem.setProduct(product);
+                cartItem.setCart(cart);
+                cartItems.put(productId, cartItem);
+            }
+            cartItem.setQuantity(quantity);
+            cartItem.setDiscount(product.getDiscount());
+            cartItem.setProductPrice(product.getSpecialPrice());
+            totalPrice += cartItem.getProductPrice() * quantity;
+            changed.add(cartItem);
+        }
+
+        cartItemRepo.deleteAllInBatch(removed);
+        cartItemRepo.saveAll(changed);
+        cart.setTotalPrice(totalPrice);
+        cartRepo.save(cart);
+
+        return cartSnapshots.putLines(cart, cartItems.values()).toCartDTO();
     }
 
     @Override
@@ -253,14 +316,10 @@ public class CartServiceImpl implements CartService {
         // Cập nhật quantity của Product
         Product product = cartItem.getProduct();
         int cartItemQuantity = cartItem.getQuantity() != null ? cartItem.getQuantity() : 0;
-        product.setQuantity(product.getQuantity() + cartItemQuantity);
+        reservations.release(product, cartItemQuantity);
         logger.info("Updated product quantity: productId={}, newQuantity={}",
                 product.getProductId(), product.getQuantity());
 
-        // Lưu Product
-        productRepo.save(product);
-        logger.info("Saved Product");
-
         // Xóa CartItem bằng truy vấn trực tiếp
         cartItemRepo.deleteCartItemByProductIdAndCartId(cartId, productId);
         cartItemRepo.flush(); // Đảm bảo lệnh DELETE được thực thi
@@ -269,6 +328,7 @@ public class CartServiceImpl implements CartService {
 
         // Lưu Cart để cập nhật totalPrice
         cartRepo.save(cart);
+        cartSnapshots.removeLine(cart, productId);
         logger.info("Saved Cart after deletion");
 
         return "Product " + product.getProductName() + " removed from the cart !!!";
@@ -288,7 +348,7 @@ public class CartServiceImpl implements CartService {
         newCart.setTotalPrice(0.0);
         Cart savedCart = cartRepo.save(newCart);
 
-        return modelMapper.map(savedCart, CartDTO.class);
+        return dtoMapper.toCartDTO(savedCart);
     }
 
     @Override
@@ -299,19 +359,6 @@ public class CartServiceImpl implements CartService {
         if (cart == null) {
             return new CartDTO(null, "Cart not found");
         }
-        CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-        List<ProductDTO> products = cart.getCartItems().stream()
-                .map(item -> {
-                    ProductDTO productDTO = modelMapper.map(item.getProduct(), ProductDTO.class);
-                    productDTO.setCartItemQuantity(item.getQuantity() != null ? item.getQuantity() : 0);
-                    productDTO.setStock(item.getProduct().getQuantity() != null ? item.getProduct().getQuantity() : 0);
-                    return productDTO;
-                }).collect(Collectors.toList());
-        cartDTO.setProducts(products);
-        int totalQuantity = cart.getCartItems().stream()
-                .mapToInt(item -> item.getQuantity() != null ? item.getQuantity() : 0)
-                .sum();
-        cartDTO.setQuantity(totalQuantity);
-        return cartDTO;
+        return cartSnapshots.get(cart.getCartId(), id -> cart).toCartDTO();
     }
-}
\ No newline at end of file
+}
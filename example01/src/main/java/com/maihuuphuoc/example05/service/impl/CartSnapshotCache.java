@@ -0,0 +1,188 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.entity.Cart;
+import com.maihuuphuoc.example05.entity.CartItem;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.mapper.DTOMapper;
+import com.maihuuphuoc.example05.payloads.CartDTO;
+import com.maihuuphuoc.example05.payloads.ProductDTO;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Keeps the assembled view of each recently used cart. A cart change maps only
+ * the line it touched and adjusts the running totals; reads are served from
+ * the snapshot without loading the cart's items. The stock shown on a line is
+ * the stock at the time that cart last changed.
+ */
+@Component
+public class CartSnapshotCache {
+
+    /** Immutable view of a cart; lines are keyed by productId in insertion order. */
+    public record Snapshot(Long cartId, String email, Double totalPrice, int quantity,
+            Map<Long, ProductDTO> lines) {
+
+        public CartDTO toCartDTO() {
+            CartDTO cartDTO = new CartDTO();
+            cartDTO.setCartId(cartId);
+            cartDTO.setTotalPrice(totalPrice);
+            cartDTO.setQuantity(quantity);
+            cartDTO.setProducts(new ArrayList<>(lines.values()));
+            return cartDTO;
+        }
+
+        Snapshot withLine(ProductDTO line, Double totalPrice) {
+            LinkedHashMap<Long, ProductDTO> next = new LinkedHashMap<>(lines);
+            ProductDTO previous = next.put(line.getProductId(), line);
+            int quantity = this.quantity - quantityOf(previous) + quantityOf(line);
+            return new Snapshot(cartId, email, totalPrice, quantity, Collections.unmodifiableMap(next));
+        }
+
+        Snapshot withoutLine(Long productId, Double totalPrice) {
+            LinkedHashMap<Long, ProductDTO> next = new LinkedHashMap<>(lines);
+            ProductDTO previous = next.remove(productId);
+            return new Snapshot(cartId, email, totalPrice, quantity - quantityOf(previous),
+                    Collections.unmodifiableMap(next));
+        }
+
+        private static int quantityOf(ProductDTO line) {
+            return line != null && line.getCartItemQuantity() != null ? line.getCartItemQuantity() : 0;
+        }
+    }
+
+    @Value("${cart.snapshot.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${cart.snapshot.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Autowired
+    private DTOMapper dtoMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<Long, Snapshot> snapshots;
+
+    @PostConstruct
+    public void init() {
+        snapshots = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "cartSnapshots");
+    }
+
+    public Snapshot get(Long cartId, Function<Long, Cart> loader) {
+        Snapshot snapshot = snapshots.getIfPresent(cartId);
+        if (snapshot == null) {
+            Cart cart = loader.apply(cartId);
+            if (cart == null) {
+                return null;
+            }
+            snapshot = build(cart);
+            // A change committed while we were loading wins over what we read
+            Snapshot current = snapshots.asMap().putIfAbsent(cartId, snapshot);
+            if (current != null) {
+                snapshot = current;
+            }
+        }
+        return snapshot;
+    }
+
+    /** Records the new state of one cart line after the cart and item were written. */
+    public Snapshot putLine(Cart cart, CartItem cartItem) {
+        ProductDTO line = toLine(cartItem);
+        return update(cart, base -> base.withLine(line, cart.getTotalPrice()));
+    }
+
+    public Snapshot removeLine(Cart cart, Long productId) {
+        return update(cart, base -> base.withoutLine(productId, cart.getTotalPrice()));
+    }
+
+    /** Replaces the whole snapshot with the given lines, e.g. after a batch of changes. */
+    public Snapshot putLines(Cart cart, Collection<CartItem> cartItems) {
+        Snapshot base = snapshots.getIfPresent(cart.getCartId());
+        return publish(cart.getCartId(), base, build(cart, cartItems));
+    }
+
+    public void evict(Long cartId) {
+        TransactionHooks.nowAndAfterCommit(() -> snapshots.invalidate(cartId));
+    }
+
+    /** Drops every snapshot showing the product, e.g. after its details changed. */
+    public void evictProduct(Long productId) {
+        TransactionHooks.nowAndAfterCommit(
+                () -> snapshots.asMap().values().removeIf(snapshot -> snapshot.lines().containsKey(productId)));
+    }
+
+    public void evictAll() {
+        TransactionHooks.nowAndAfterCommit(() -> snapshots.invalidateAll());
+    }
+
+    /**
+     * Applies the change to the cached snapshot, or rebuilds it from the cart
+     * when there is none. The result is published after commit, and only if
+     * no other change to the cart was published in between.
+     */
+    private Snapshot update(Cart cart, Function<Snapshot, Snapshot> change) {
+        Long cartId = cart.getCartId();
+        Snapshot base = snapshots.getIfPresent(cartId);
+        return publish(cartId, base, base != null ? change.apply(base) : build(cart));
+    }
+
+    private Snapshot publish(Long cartId, Snapshot base, Snapshot next) {
+        TransactionHooks.afterCommit(() -> {
+            boolean published = base != null
+                    ? snapshots.asMap().replace(cartId, base, next)
+                    : snapshots.asMap().putIfAbsent(cartId, next) == null;
+            if (!published) {
+                snapshots.invalidate(cartId);
+            }
+        });
+        TransactionHooks.afterRollback(() -> snapshots.invalidate(cartId));
+        return next;
+    }
+
+    private Snapshot build(Cart cart) {
+        return build(cart, cart.getCartItems());
+    }
+
+    private Snapshot build(Cart cart, Collection<CartItem> cartItems) {
+        LinkedHashMap<Long, ProductDTO> lines = new LinkedHashMap<>();
+        int quantity = 0;
+        for (CartItem item : cartItems) {
+            ProductDTO line = toLine(item);
+            lines.put(line.getProductId(), line);
+            quantity += line.getCartItemQuantity();
+        }
+        return new Snapshot(cart.getCartId(), cart.getUser() != null ? cart.getUser().getEmail() : null,
+                cart.getTotalPrice(), quantity, Collections.unmodifiableMap(lines));
+    }
+
+    private ProductDTO toLine(CartItem item) {
+        Product product = item.getProduct();
+        ProductDTO productDTO = dtoMapper.toProductDTO(product);
+        productDTO.setCartItemQuantity(item.getQuantity() != null ? item.getQuantity() : 0);
+        productDTO.setStock(product.getQuantity() != null ? product.getQuantity() : 0);
+        return productDTO;
+    }
+}
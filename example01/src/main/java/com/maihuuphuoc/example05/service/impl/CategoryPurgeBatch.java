@@ -0,0 +1,93 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.repository.CartItemRepo;
+import com.maihuuphuoc.example05.repository.CartRepo;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+import com.maihuuphuoc.example05.service.FileService;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Deletes one batch of a category's products with set-based statements: take
+ * their lines out of the affected cart totals, delete those lines, then delete
+ * the products. Stock held by the deleted lines goes away with the products.
+ */
+@Transactional
+@Component
+public class CategoryPurgeBatch {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private CartRepo cartRepo;
+
+    @Autowired
+    private CartItemRepo cartItemRepo;
+
+    @Autowired
+    private CategoryRepo categoryRepo;
+
+    @Autowired
+    private InventoryReservations reservations;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private ProductFacetIndex facetIndex;
+
+    @Autowired
+    private ProductSuggestIndex suggestIndex;
+
+    @Autowired
+    private ProductCooccurrenceIndex cooccurrenceIndex;
+
+    @Autowired
+    private BestSellerLeaderboard bestSellers;
+
+    @Autowired
+    private CartSnapshotCache cartSnapshots;
+
+    public int purge(List<Long> productIds) {
+        List<Long> cartIds = cartRepo.findCartIdsByProductIds(productIds);
+        if (!cartIds.isEmpty()) {
+            cartRepo.subtractProductLines(productIds, cartIds);
+            cartItemRepo.deleteAllByProductIds(productIds);
+            cartIds.forEach(cartSnapshots::evict);
+        }
+        List<String> images = productRepo.findImagesByProductIds(productIds);
+        int deleted = productRepo.deleteAllByProductIds(productIds);
+        images.forEach(fileService::releaseImage);
+        productIds.forEach(productId -> {
+            reservations.invalidate(productId);
+            searchIndex.remove(productId);
+            facetIndex.remove(productId);
+            suggestIndex.remove(productId);
+            cooccurrenceIndex.remove(productId);
+            bestSellers.remove(productId);
+        });
+        return deleted;
+    }
+
+    /** Deletes the category once it has no products left; returns false otherwise. */
+    public boolean deleteIfEmpty(Long categoryId) {
+        if (productRepo.countByCategoryCategoryId(categoryId) > 0) {
+            return false;
+        }
+        if (categoryRepo.deleteCategoryById(categoryId) == 0) {
+            return false;
+        }
+        suggestIndex.removeCategory(categoryId);
+        return true;
+    }
+}
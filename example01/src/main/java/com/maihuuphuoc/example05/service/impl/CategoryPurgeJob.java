@@ -0,0 +1,95 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Deletes the products of a category in batches of
+ * {@code category.delete.batch-size}. Called inside a transaction the batches
+ * join it; {@link #submit} instead deletes a large category in the
+ * background, one short transaction per batch, and removes the category at
+ * the end.
+ */
+@Component
+public class CategoryPurgeJob {
+    private static final Logger logger = LoggerFactory.getLogger(CategoryPurgeJob.class);
+
+    @Value("${category.delete.batch-size:500}")
+    private int batchSize;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private CategoryPurgeBatch purgeBatch;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService worker;
+
+    @PostConstruct
+    public void init() {
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "category-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    public int purgeProducts(Long categoryId) {
+        int deleted = 0;
+        List<Long> productIds;
+        do {
+            productIds = productRepo.findIdsByCategoryId(categoryId, PageRequest.of(0, batchSize));
+            if (!productIds.isEmpty()) {
+                deleted += purgeBatch.purge(productIds);
+                catalogCache.evictCategory(categoryId);
+            }
+        } while (productIds.size() == batchSize);
+        return deleted;
+    }
+
+    /** Starts deleting the category in the background; returns false if that is already under way. */
+    public boolean submit(Long categoryId) {
+        if (!running.add(categoryId)) {
+            return false;
+        }
+        worker.execute(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                int deleted = purgeProducts(categoryId);
+                boolean removed = purgeBatch.deleteIfEmpty(categoryId);
+                logger.info("Deleted {} products of category {} in {} ms, category removed: {}", deleted,
+                        categoryId, System.currentTimeMillis() - start, removed);
+            } catch (RuntimeException e) {
+                logger.error("Could not delete category {}", categoryId, e);
+            } finally {
+                running.remove(categoryId);
+            }
+        });
+        return true;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.stream.Collectors;
 
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -12,14 +13,13 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import com.maihuuphuoc.example05.entity.Category;
-import com.maihuuphuoc.example05.entity.Product;
 import com.maihuuphuoc.example05.exceptions.APIException;
 import com.maihuuphuoc.example05.exceptions.ResourceNotFoundException;
 import com.maihuuphuoc.example05.payloads.CategoryDTO;
 import com.maihuuphuoc.example05.payloads.CategoryResponse;
 import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
 import com.maihuuphuoc.example05.service.CategoryService;
-import com.maihuuphuoc.example05.service.ProductService;
 
 import jakarta.transaction.Transactional;
 
@@ -31,11 +31,26 @@ public class CategoryServiceImpl implements CategoryService {
     private CategoryRepo categoryRepo;
 
     @Autowired
-    private ProductService productService;
+    private ProductRepo productRepo;
+
+    @Autowired
+    private CategoryPurgeJob purgeJob;
+
+    @Autowired
+    private ProductSuggestIndex suggestIndex;
+
+    @Value("${category.delete.background-threshold:5000}")
+    private long backgroundThreshold;
 
     @Autowired
     private ModelMapper modelMapper;
 
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private CartSnapshotCache cartSnapshots;
+
     @Override
     public CategoryDTO createCategory(Category category) {
         Category savedCategory = categoryRepo.findByCategoryName(category.getCategoryName());
@@ -45,6 +60,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
 
         savedCategory = categoryRepo.save(category);
+        suggestIndex.indexCategory(savedCategory);
         return modelMapper.map(savedCategory, CategoryDTO.class);
     }
 
@@ -82,21 +98,29 @@ public class CategoryServiceImpl implements CategoryService {
 
         category.setCategoryId(categoryId);
         savedCategory = categoryRepo.save(category);
+        suggestIndex.indexCategory(savedCategory);
+        catalogCache.evictCategory(categoryId);
+        cartSnapshots.evictAll();
         return modelMapper.map(savedCategory, CategoryDTO.class);
     }
 
     @Override
     public String deleteCategory(Long categoryId) {
-        Category category = categoryRepo.findById(categoryId)
+        categoryRepo.findById(categoryId)
                 .orElseThrow(() -> new ResourceNotFoundException("Category", "categoryId", categoryId));
 
-        List<Product> products = category.getProducts();
-
-        products.forEach(product -> {
-            productService.deleteProduct(product.getProductId());
-        });
+        // Large categories are deleted batch by batch outside this transaction
+        if (productRepo.countByCategoryCategoryId(categoryId) > backgroundThreshold) {
+            if (!purgeJob.submit(categoryId)) {
+                throw new APIException("Category with categoryId: " + categoryId + " is already being deleted");
+            }
+            return "Category with categoryId: " + categoryId + " is being deleted in the background !!!";
+        }
 
-        categoryRepo.delete(category);
+        purgeJob.purgeProducts(categoryId);
+        categoryRepo.deleteCategoryById(categoryId);
+        suggestIndex.removeCategory(categoryId);
+        catalogCache.evictCategory(categoryId);
 
         return "Category with categoryId: " + categoryId + " deleted successfully !!!";
     }
@@ -1,39 +1,189 @@
 package com.maihuuphuoc.example05.service.impl;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.UUID;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.maihuuphuoc.example05.repository.StoredImageRepo;
 import com.maihuuphuoc.example05.service.FileService;
 
+/**
+ * Content-addressed image store. An upload is hashed while it is written and
+ * named after its SHA-256, so identical content is kept once however many
+ * products and blogs use it. Files are fanned out as {@code ab/cd/abcd....ext}
+ * to keep directories small. Names from before the store, UUIDs in the flat
+ * folder, still resolve there. Uses are counted in stored_images, and files
+ * unused for {@code image.store.orphan-grace-minutes} are removed with their
+ * variants.
+ */
 @Service
 public class FileServiceImpl implements FileService {
+    private static final Logger logger = LoggerFactory.getLogger(FileServiceImpl.class);
+
+    private static final Pattern STORED_NAME = Pattern.compile("[0-9a-f]{64}(\\.\\w+)?");
+    private static final String INCOMING = ".incoming";
+    private static final int SWEEP_BATCH_SIZE = 500;
+
+    // Serializes storing and removing the same file; a name always maps to the same stripe
+    private final Object[] locks = new Object[64];
+
+    @Value("${project.image}")
+    private String path;
+
+    @Value("${image.store.orphan-grace-minutes:60}")
+    private long orphanGraceMinutes;
+
+    @Autowired
+    private ImageVariants imageVariants;
+
+    @Autowired
+    private StoredImageRepo storedImageRepo;
+
+    public FileServiceImpl() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
     @Override
     public String uploadImage(String path, MultipartFile file) throws IOException {
-        String originalFileName = file.getOriginalFilename();
-        String randomId = UUID.randomUUID().toString();
-        @SuppressWarnings("null")
-        String fileName = randomId.concat(originalFileName.substring(originalFileName.lastIndexOf('.')));
-        String filePath = path + File.separator + fileName;
-        File folder = new File(path);
-        if (!folder.exists()) {
-            folder.mkdir();
+        Path folder = Paths.get(path).toAbsolutePath().normalize();
+        Path incoming = Files.createDirectories(folder.resolve(INCOMING));
+        Path temporary = Files.createTempFile(incoming, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream input = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(input, temporary, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String fileName = HexFormat.of().formatHex(digest.digest()) + extensionOf(file.getOriginalFilename());
+            Path target = storedPath(folder, fileName);
+
+            boolean created = false;
+            synchronized (lockFor(fileName)) {
+                // Registered and committed first, so the sweeper no longer treats an existing copy as unused,
+                // and a file the caller ends up not using still has a row to be swept by
+                storedImageRepo.register(fileName);
+                if (!Files.exists(target)) {
+                    Files.createDirectories(target.getParent());
+                    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                    created = true;
+                }
+            }
+            if (created) {
+                imageVariants.generate(target);
+            }
+            return fileName;
+        } finally {
+            Files.deleteIfExists(temporary);
         }
-        Files.copy(file.getInputStream(), Paths.get(filePath));
-        return fileName;
     }
 
     @Override
-    public InputStream getResource(String path, String fileName) throws FileNotFoundException {
-        String filePath = path + File.separator + fileName;
-        InputStream inputStream = new FileInputStream(filePath);
-        return inputStream;
+    public Path getImagePath(String path, String fileName, String size) throws FileNotFoundException {
+        Path folder = Paths.get(path).toAbsolutePath().normalize();
+        Path file = STORED_NAME.matcher(fileName).matches()
+                ? storedPath(folder, fileName)
+                : folder.resolve(fileName).normalize();
+        if (!file.startsWith(folder) || !Files.isRegularFile(file)) {
+            throw new FileNotFoundException("Image not found: " + fileName);
+        }
+        ImageVariants.Size variant = ImageVariants.Size.parse(size);
+        if (variant != null) {
+            Path variantFile = file.resolveSibling(ImageVariants.variantName(file.getFileName().toString(), variant));
+            if (Files.isRegularFile(variantFile)) {
+                return variantFile;
+            }
+        }
+        return file;
+    }
+
+    @Override
+    public void retainImage(String fileName) {
+        if (fileName != null && STORED_NAME.matcher(fileName).matches()) {
+            storedImageRepo.retain(fileName);
+        }
+    }
+
+    @Override
+    public void releaseImage(String fileName) {
+        if (fileName != null && STORED_NAME.matcher(fileName).matches()) {
+            storedImageRepo.release(fileName);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${image.store.sweep-interval-ms:3600000}")
+    public void removeUnusedImages() {
+        Path folder = Paths.get(path).toAbsolutePath().normalize();
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(orphanGraceMinutes);
+        int removed = 0;
+        List<String> fileNames;
+        do {
+            fileNames = storedImageRepo.findReleasedBefore(cutoff, SWEEP_BATCH_SIZE);
+            for (String fileName : fileNames) {
+                synchronized (lockFor(fileName)) {
+                    if (storedImageRepo.deleteIfReleased(fileName, cutoff) && delete(storedPath(folder, fileName))) {
+                        removed++;
+                    }
+                }
+            }
+        } while (fileNames.size() == SWEEP_BATCH_SIZE);
+        if (removed > 0) {
+            logger.info("Removed {} images no product or blog uses any more", removed);
+        }
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            for (ImageVariants.Size size : ImageVariants.Size.values()) {
+                Files.deleteIfExists(file.resolveSibling(ImageVariants.variantName(file.getFileName().toString(),
+                        size)));
+            }
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not remove the unused image {}", file, e);
+            return false;
+        }
+    }
+
+    private static Path storedPath(Path folder, String fileName) {
+        return folder.resolve(fileName.substring(0, 2)).resolve(fileName.substring(2, 4)).resolve(fileName);
+    }
+
+    private Object lockFor(String fileName) {
+        return locks[Math.floorMod(fileName.hashCode(), locks.length)];
+    }
+
+    private static String extensionOf(String originalFileName) {
+        int dot = originalFileName != null ? originalFileName.lastIndexOf('.') : -1;
+        String extension = dot < 0 ? "" : originalFileName.substring(dot).toLowerCase(Locale.ROOT);
+        return extension.matches("\\.\\w+") ? extension : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,283 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.exceptions.APIException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Writes resized copies of an uploaded image next to it, named
+ * {@code <name>-thumb.<ext>}, {@code -card} and {@code -full}. Uploads only
+ * queue the work; {@code image.variants.workers} threads decode each image
+ * once, subsampled to about twice the largest variant so memory stays bounded
+ * whatever the upload's resolution, then scale it down variant by variant.
+ * Images of more than {@code image.variants.max-pixels} are not decoded at
+ * all. When the queue is full, or the image is too large, the upload keeps
+ * only its original, which the image endpoints serve in place of a missing
+ * variant.
+ */
+@Component
+public class ImageVariants {
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariants.class);
+
+    public enum Size {
+        FULL(1280), CARD(480), THUMB(160);
+
+        private final int maxSide;
+
+        Size(int maxSide) {
+            this.maxSide = maxSide;
+        }
+
+        /** The variant for a size request parameter; null or "original" mean the uploaded file. */
+        public static Size parse(String size) {
+            if (size == null || size.isBlank() || size.equalsIgnoreCase("original")) {
+                return null;
+            }
+            try {
+                return valueOf(size.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new APIException("Unknown image size: " + size + " (use thumb, card, full or original)");
+            }
+        }
+    }
+
+    @Value("${image.variants.workers:2}")
+    private int workers;
+
+    @Value("${image.variants.queue-capacity:100}")
+    private int capacity;
+
+    @Value("${image.variants.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    @Value("${image.variants.max-pixels:100000000}")
+    private long maxPixels;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    private Timer processTimer;
+
+    private Counter failed;
+
+    private Counter rejected;
+
+    // Bytes of decoded pixels currently held by the workers
+    private final AtomicLong decodedBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(capacity);
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "image-variants-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        processTimer = Timer.builder("images.variants")
+                .description("Decoding, scaling and writing the variants of one upload")
+                .register(meterRegistry);
+        failed = Counter.builder("images.variants.failed")
+                .description("Uploads whose variants could not be written")
+                .register(meterRegistry);
+        rejected = Counter.builder("images.variants.rejected")
+                .description("Uploads left without variants because the queue was full")
+                .register(meterRegistry);
+        meterRegistry.gauge("images.variants.queue.size", queue, ArrayBlockingQueue::size);
+        meterRegistry.gauge("images.variants.decoded.bytes", decodedBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static String variantName(String fileName, Size size) {
+        int dot = fileName.lastIndexOf('.');
+        String suffix = "-" + size.name().toLowerCase(Locale.ROOT);
+        return dot < 0 ? fileName + suffix : fileName.substring(0, dot) + suffix + fileName.substring(dot);
+    }
+
+    /** Queues the variants of a freshly written upload; never blocks the caller. */
+    public void generate(Path original) {
+        try {
+            executor.execute(() -> processTimer.record(() -> process(original)));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("Image variant queue is full, {} is served without variants", original.getFileName());
+        }
+    }
+
+    private void process(Path original) {
+        String fileName = original.getFileName().toString();
+        String format = writerFormat(fileName);
+        if (format == null) {
+            return;
+        }
+        BufferedImage image = null;
+        long held = 0;
+        try {
+            image = decode(original, 2 * Size.FULL.maxSide);
+            if (image == null) {
+                return;
+            }
+            held = 4L * image.getWidth() * image.getHeight();
+            decodedBytes.addAndGet(held);
+            // Largest first, each variant scaled from the previous one
+            for (Size size : Size.values()) {
+                if (Math.max(image.getWidth(), image.getHeight()) > size.maxSide) {
+                    image = scale(image, size.maxSide, format.equals("jpeg"));
+                }
+                write(image, format, original.resolveSibling(variantName(fileName, size)));
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            logger.warn("Could not write the variants of {}", fileName, e);
+        } finally {
+            decodedBytes.addAndGet(-held);
+        }
+    }
+
+    // Subsamples while decoding so the pixels held never exceed limit x limit
+    private BufferedImage decode(Path file, int limit) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                // Even subsampled, the reader walks every source pixel
+                if ((long) width * height > maxPixels) {
+                    logger.warn("{} is {}x{}, over the {} pixel limit, and is served without variants",
+                            file.getFileName(), width, height, maxPixels);
+                    return null;
+                }
+                int longest = Math.max(width, height);
+                int step = Math.max(1, (longest + limit - 1) / limit);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Halves at most once per pass, which keeps bilinear filtering from skipping pixels
+    private static BufferedImage scale(BufferedImage source, int maxSide, boolean opaque) {
+        double ratio = (double) maxSide / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                // JPEG has no alpha; transparent pixels become white instead of black
+                graphics.drawImage(current, 0, 0, width, height, opaque ? Color.WHITE : null, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    // Written beside the target and moved into place, so readers never see half a file
+    private void write(BufferedImage image, String format, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            return;
+        }
+        ImageWriter writer = writers.next();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(temporary.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format.equals("jpeg")) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(opaque(image, format), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // An image that was never scaled may still carry alpha, which the JPEG writer rejects
+    private static BufferedImage opaque(BufferedImage image, String format) {
+        if (!format.equals("jpeg") || !image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = copy.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return copy;
+    }
+
+    // Variants keep the upload's format when ImageIO can write it
+    private static String writerFormat(String fileName) {
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return switch (extension) {
+            case "jpg", "jpeg" -> "jpeg";
+            case "png", "gif", "bmp" -> extension;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * In-memory view of the stock still available per product. Reservations are
+ * taken with a compare-and-set on the product's counter, so once a product is
+ * sold out further attempts are rejected without touching the database. The
+ * database stays the source of truth: counters are loaded from it on first
+ * use, expire after a short time and are dropped whenever they may be wrong.
+ */
+public class InventoryLedger {
+
+    private final Cache<Long, AtomicInteger> counters;
+
+    public InventoryLedger(long maximumSize, Duration ttl) {
+        this.counters = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Takes {@code quantity} units from the product's counter, loading it with
+     * {@code loader} if needed. Returns false, leaving the counter untouched,
+     * when fewer units are left.
+     */
+    public boolean tryReserve(Long productId, int quantity, Function<Long, Integer> loader) {
+        AtomicInteger available = counters.get(productId, id -> {
+            Integer stock = loader.apply(id);
+            return new AtomicInteger(stock != null ? stock : 0);
+        });
+        while (true) {
+            int current = available.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (available.compareAndSet(current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    /** Gives units back to a loaded counter; unloaded counters will read the new stock from the database. */
+    public void release(Long productId, int quantity) {
+        AtomicInteger available = counters.getIfPresent(productId);
+        if (available != null) {
+            available.addAndGet(quantity);
+        }
+    }
+
+    public void invalidate(Long productId) {
+        counters.invalidate(productId);
+    }
+
+    public Integer available(Long productId) {
+        AtomicInteger available = counters.getIfPresent(productId);
+        return available != null ? available.get() : null;
+    }
+}
@@ -0,0 +1,116 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.exceptions.APIException;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Moves stock between products and carts. Stock is taken with a single
+ * conditional UPDATE ({@code quantity >= n}), so concurrent shoppers can never
+ * drive it below zero, and an {@link InventoryLedger} in front of it turns
+ * away requests for sold-out products before they reach the database.
+ * Must be called inside a transaction.
+ */
+@Component
+public class InventoryReservations {
+
+    @Value("${inventory.ledger.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${inventory.ledger.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private ProductFacetIndex facetIndex;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private InventoryLedger ledger;
+
+    @PostConstruct
+    public void init() {
+        ledger = new InventoryLedger(maximumSize, Duration.ofSeconds(ttlSeconds));
+    }
+
+    /**
+     * Takes {@code quantity} units of the product's stock and refreshes the
+     * managed entity with the new quantity.
+     */
+    public void reserve(Product product, int quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        Long productId = product.getProductId();
+        if (!ledger.tryReserve(productId, quantity, productRepo::findQuantityById)) {
+            throw unavailable(product, ledger.available(productId));
+        }
+        TransactionHooks.afterRollback(() -> ledger.invalidate(productId));
+
+        if (productRepo.reserveStock(productId, quantity) == 0) {
+            throw unavailable(product, productRepo.findQuantityById(productId));
+        }
+        entityManager.refresh(product);
+        catalogCache.evictProductOnly(productId);
+        facetIndex.refreshStock(productId);
+    }
+
+    /** Returns {@code quantity} units to the product's stock. */
+    public void release(Product product, int quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        Long productId = product.getProductId();
+        productRepo.releaseStock(productId, quantity);
+        entityManager.refresh(product);
+        TransactionHooks.afterCommit(() -> ledger.release(productId, quantity));
+        catalogCache.evictProductOnly(productId);
+        facetIndex.refreshStock(productId);
+    }
+
+    /** Returns units of many products at once, e.g. from expired carts. */
+    public void releaseAll(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        productRepo.addStock(quantities);
+        TransactionHooks.afterCommit(() -> quantities.forEach(ledger::release));
+        quantities.forEach((productId, quantity) -> {
+            catalogCache.evictProductOnly(productId);
+            if (quantity > 0) {
+                facetIndex.refreshStock(productId);
+            }
+        });
+    }
+
+    /** Forgets the ledger counter after the stock was set directly, e.g. by an admin edit. */
+    public void invalidate(Long productId) {
+        TransactionHooks.nowAndAfterCommit(() -> ledger.invalidate(productId));
+    }
+
+    private APIException unavailable(Product product, Integer available) {
+        if (available == null || available <= 0) {
+            return new APIException(product.getProductName() + " is not available");
+        }
+        return new APIException("Please, make an order of the " + product.getProductName()
+                + " less than or equal to the quantity " + available + ".");
+    }
+}
@@ -0,0 +1,133 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.maihuuphuoc.example05.exceptions.ResourceNotFoundException;
+import com.maihuuphuoc.example05.payloads.OrderDTO;
+import com.maihuuphuoc.example05.payloads.OrderRequestDTO;
+import com.maihuuphuoc.example05.payloads.OrderRequestDTO.Status;
+import com.maihuuphuoc.example05.service.OrderService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Places orders on a small worker pool so checkout requests don't hold a
+ * servlet thread while waiting on database locks. The queue is bounded: when
+ * it is full, {@link #submit} throws {@link RejectedExecutionException} and
+ * the client is told to retry. Requests are kept in memory for
+ * {@code order.queue.retention-minutes}, at most
+ * {@code order.queue.maximum-size} of them so a burst of checkouts cannot
+ * exhaust the heap. A request sent with an idempotency key gets an id derived
+ * from the user and the key, so the key lives and is evicted with the request.
+ */
+@Component
+public class OrderQueue {
+    private static final Logger logger = LoggerFactory.getLogger(OrderQueue.class);
+
+    @Value("${order.queue.capacity:500}")
+    private int capacity;
+
+    @Value("${order.queue.workers:4}")
+    private int workers;
+
+    @Value("${order.queue.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${order.queue.maximum-size:100000}")
+    private long maximumSize;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    private Cache<String, OrderRequestDTO> requests;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(capacity);
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "order-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        requests = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(retentionMinutes))
+                .build();
+        meterRegistry.gauge("orders.queue.size", queue, ArrayBlockingQueue::size);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.warn("Order queue stopped with {} requests still waiting", executor.getQueue().size());
+        }
+    }
+
+    /**
+     * Queues an order for the cart. A retry carrying the same idempotency key
+     * gets the original request back instead of placing a second order.
+     */
+    public OrderRequestDTO submit(String emailId, Long cartId, String paymentMethod, String idempotencyKey) {
+        String requestId = idempotencyKey == null || idempotencyKey.isBlank()
+                ? UUID.randomUUID().toString()
+                : UUID.nameUUIDFromBytes((emailId + '\u001f' + idempotencyKey).getBytes(StandardCharsets.UTF_8))
+                        .toString();
+        // A rejected request is not stored, so retrying it with the same key queues it again
+        return requests.get(requestId, id -> enqueue(id, emailId, cartId, paymentMethod));
+    }
+
+    public OrderRequestDTO getRequest(String emailId, String requestId) {
+        OrderRequestDTO request = requests.getIfPresent(requestId);
+        if (request == null || !request.getEmail().equals(emailId)) {
+            throw new ResourceNotFoundException("Order request", "requestId", requestId);
+        }
+        return request;
+    }
+
+    // Runs while the cache computes the entry, so a worker's first state change waits until it is stored
+    private OrderRequestDTO enqueue(String requestId, String emailId, Long cartId, String paymentMethod) {
+        OrderRequestDTO request = new OrderRequestDTO(requestId, Status.QUEUED, emailId, cartId, null, null);
+        executor.execute(() -> process(request, paymentMethod));
+        return request;
+    }
+
+    // Each state change stores a new object, so readers never see a half-updated request
+    private void process(OrderRequestDTO request, String paymentMethod) {
+        String requestId = request.getRequestId();
+        requests.put(requestId, new OrderRequestDTO(requestId, Status.PROCESSING, request.getEmail(),
+                request.getCartId(), null, null));
+        try {
+            OrderDTO order = orderService.placeOrder(request.getEmail(), request.getCartId(), paymentMethod);
+            requests.put(requestId, new OrderRequestDTO(requestId, Status.COMPLETED, request.getEmail(),
+                    request.getCartId(), order, null));
+        } catch (RuntimeException e) {
+            logger.warn("Queued order {} for cart {} failed: {}", requestId, request.getCartId(), e.getMessage());
+            requests.put(requestId, new OrderRequestDTO(requestId, Status.FAILED, request.getEmail(),
+                    request.getCartId(), null, e.getMessage()));
+        }
+    }
+}
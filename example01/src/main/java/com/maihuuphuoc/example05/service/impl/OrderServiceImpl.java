@@ -2,9 +2,11 @@ package com.maihuuphuoc.example05.service.impl;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -17,14 +19,15 @@ import com.maihuuphuoc.example05.entity.CartItem;
 import com.maihuuphuoc.example05.entity.Order;
 import com.maihuuphuoc.example05.entity.OrderItem;
 import com.maihuuphuoc.example05.entity.Payment;
-import com.maihuuphuoc.example05.entity.Product;
 import com.maihuuphuoc.example05.exceptions.APIException;
 import com.maihuuphuoc.example05.exceptions.ResourceNotFoundException;
+import com.maihuuphuoc.example05.mapper.DTOMapper;
 import com.maihuuphuoc.example05.payloads.OrderDTO;
 import com.maihuuphuoc.example05.payloads.OrderItemDTO;
 import com.maihuuphuoc.example05.payloads.OrderResponse;
 import com.maihuuphuoc.example05.repository.CartItemRepo;
 import com.maihuuphuoc.example05.repository.CartRepo;
+import com.maihuuphuoc.example05.repository.KeysetPager;
 import com.maihuuphuoc.example05.repository.OrderItemRepo;
 import com.maihuuphuoc.example05.repository.OrderRepo;
 import com.maihuuphuoc.example05.repository.PaymentRepo;
@@ -33,11 +36,17 @@ import com.maihuuphuoc.example05.service.CartService;
 import com.maihuuphuoc.example05.service.OrderService;
 import com.maihuuphuoc.example05.service.UserService;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
 
 @Transactional
 @Service
 public class OrderServiceImpl implements OrderService {
+    // Scalar columns a client may page by cursor through; the id is always allowed
+    private static final Set<String> CURSOR_SORT_KEYS = Set.of("email", "orderDate", "totalAmount",
+            "orderStatus");
+
     @Autowired
     public UserRepo userRepo;
     @Autowired
@@ -55,14 +64,32 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     public CartService cartService;
     @Autowired
-    public ModelMapper modelMapper;
+    public DTOMapper dtoMapper;
+    @Autowired
+    private KeysetPager keysetPager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private CartSnapshotCache cartSnapshots;
+    @Autowired
+    private ProductSuggestIndex suggestIndex;
+    @Autowired
+    private ProductCooccurrenceIndex cooccurrenceIndex;
+    @Autowired
+    private BestSellerLeaderboard bestSellers;
 
     @Override
     public OrderDTO placeOrder(String emailId, Long cartId, String paymentMethod) {
+        Timer.Sample sample = Timer.start(meterRegistry);
         Cart cart = cartRepo.findCartByEmailAndCartId(emailId, cartId);
         if (cart == null) {
             throw new ResourceNotFoundException("Cart", "cartId", cartId);
         }
+        List<CartItem> cartItems = cartItemRepo.findLinesByCartId(cartId);
+        if (cartItems.size() == 0) {
+            throw new APIException("Cart is empty");
+        }
+
         Order order = new Order();
         order.setEmail(emailId);
         order.setOrderDate(LocalDate.now());
@@ -77,10 +104,6 @@ public class OrderServiceImpl implements OrderService {
 
         Order savedOrder = orderRepo.save(order);
 
-        List<CartItem> cartItems = cart.getCartItems();
-        if (cartItems.size() == 0) {
-            throw new APIException("Cart is empty");
-        }
         List<OrderItem> orderItems = new ArrayList<>();
         for (CartItem cartItem : cartItems) {
             OrderItem orderItem = new OrderItem();
@@ -91,26 +114,37 @@ public class OrderServiceImpl implements OrderService {
             orderItem.setOrder(savedOrder);
             orderItems.add(orderItem);
         }
-        orderItems = orderItemRepo.saveAll(orderItems);
-
-        // Sao chép cartItems để tránh ConcurrentModificationException
-        List<CartItem> cartItemsCopy = new ArrayList<>(cart.getCartItems());
-        for (CartItem item : cartItemsCopy) {
-            int quantity = item.getQuantity();
-            Product product = item.getProduct();
-            cartService.deleteProductFromCart(cartId, item.getProduct().getProductId());
-            product.setQuantity(product.getQuantity() - quantity);
-        }
+        orderItemRepo.insertAll(orderItems);
+        Map<Long, Integer> quantities = orderItems.stream().collect(Collectors.toMap(
+                item -> item.getProduct().getProductId(), OrderItem::getQuantity, Integer::sum));
+        Map<Long, Long> categoryIds = new HashMap<>();
+        orderItems.forEach(item -> categoryIds.put(item.getProduct().getProductId(),
+                item.getProduct().getCategory() != null ? item.getProduct().getCategory().getCategoryId() : null));
+        suggestIndex.recordSales(quantities);
+        bestSellers.recordSales(savedOrder.getOrderId(), savedOrder.getOrderDate(), quantities, categoryIds);
+        cooccurrenceIndex.recordOrder(savedOrder.getOrderId(),
+                orderItems.stream().map(item -> item.getProduct().getProductId()).toList());
 
-        OrderDTO orderDTO = modelMapper.map(savedOrder, OrderDTO.class);
-        orderItems.forEach(item -> orderDTO.getOrderItems().add(modelMapper.map(item, OrderItemDTO.class)));
+        // The stock was already reserved when the items entered the cart, so
+        // checking out only empties the cart
+        cartItemRepo.deleteAllByCartId(cartId);
+        cart.setTotalPrice(0.0);
+        cartRepo.save(cart);
+        cartSnapshots.evict(cartId);
+
+        OrderDTO orderDTO = dtoMapper.toOrderDTO(savedOrder);
+        orderItems.forEach(item -> orderDTO.getOrderItems().add(dtoMapper.toOrderItemDTO(item)));
+        sample.stop(Timer.builder("orders.checkout")
+                .description("Order placement time by number of cart lines")
+                .tag("lines", lineBucket(orderItems.size()))
+                .register(meterRegistry));
         return orderDTO;
     }
 
     @Override
     public List<OrderDTO> getOrdersByUser(String emailId) {
         List<Order> orders = orderRepo.findAllByEmail(emailId);
-        List<OrderDTO> orderDTOs = orders.stream().map(order -> modelMapper.map(order, OrderDTO.class))
+        List<OrderDTO> orderDTOs = orders.stream().map(order -> dtoMapper.toOrderDTO(order))
                 .collect(Collectors.toList());
         if (orderDTOs.size() == 0) {
             throw new APIException("No orders placed yet by the user with email: " + emailId);
@@ -124,7 +158,7 @@ public class OrderServiceImpl implements OrderService {
         if (order == null) {
             throw new ResourceNotFoundException("Order", "orderId", orderId);
         }
-        return modelMapper.map(order, OrderDTO.class);
+        return dtoMapper.toOrderDTO(order);
     }
 
     @Override
@@ -134,7 +168,7 @@ public class OrderServiceImpl implements OrderService {
         Pageable pageDetails = PageRequest.of(pageNumber, pageSize, sortByAndOrder);
         Page<Order> pageOrders = orderRepo.findAll(pageDetails);
         List<Order> orders = pageOrders.getContent();
-        List<OrderDTO> orderDTOs = orders.stream().map(order -> modelMapper.map(order, OrderDTO.class))
+        List<OrderDTO> orderDTOs = orders.stream().map(order -> dtoMapper.toOrderDTO(order))
                 .collect(Collectors.toList());
 
         if (orderDTOs.size() == 0) {
@@ -151,6 +185,27 @@ public class OrderServiceImpl implements OrderService {
         return orderResponse;
     }
 
+    @Override
+    public OrderResponse getAllOrdersByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+            boolean withCount) {
+        KeysetPager.Slice<Order> slice = keysetPager.fetch(Order.class, "orderId", CURSOR_SORT_KEYS, sortBy,
+                sortOrder, cursor, pageSize, "payment");
+        List<OrderDTO> orderDTOs = slice.content().stream().map(order -> dtoMapper.toOrderDTO(order))
+                .collect(Collectors.toList());
+
+        OrderResponse orderResponse = new OrderResponse();
+        orderResponse.setContent(orderDTOs);
+        orderResponse.setPageSize(pageSize);
+        orderResponse.setLastPage(slice.nextCursor() == null);
+        orderResponse.setNextCursor(slice.nextCursor());
+        if (withCount) {
+            long totalElements = orderRepo.count();
+            orderResponse.setTotalElements(totalElements);
+            orderResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
+        return orderResponse;
+    }
+
     @Override
     public OrderDTO updateOrder(String emailId, Long orderId, String orderStatus) {
         Order order = orderRepo.findOrderByEmailAndOrderId(emailId, orderId);
@@ -158,14 +213,14 @@ public class OrderServiceImpl implements OrderService {
             throw new ResourceNotFoundException("Order", "orderId", orderId);
         }
         order.setOrderStatus(orderStatus);
-        return modelMapper.map(order, OrderDTO.class);
+        return dtoMapper.toOrderDTO(order);
     }
 
     @Override
     public OrderDTO getOrderById(Long orderId) {
         Order order = orderRepo.findById(orderId)
                 .orElseThrow(() -> new ResourceNotFoundException("Order", "id", orderId));
-        return modelMapper.map(order, OrderDTO.class);
+        return dtoMapper.toOrderDTO(order);
     }
 
     @Override
@@ -173,6 +228,11 @@ public class OrderServiceImpl implements OrderService {
         Order order = orderRepo.findById(orderId)
                 .orElseThrow(() -> new ResourceNotFoundException("Order", "id", orderId));
         System.out.println("Before delete: Order found with id: " + orderId);
+        // The order items go with the order, and with them its units in the rankings
+        Map<Long, Integer> quantities = order.getOrderItems().stream().collect(Collectors.toMap(
+                item -> item.getProduct().getProductId(), OrderItem::getQuantity, Integer::sum));
+        bestSellers.removeSales(orderId, order.getOrderDate(), quantities);
+        cooccurrenceIndex.removeOrder(orderId, quantities.keySet());
         orderRepo.delete(order);
         System.out.println("After delete: Order with id: " + orderId);
         // Kiểm tra lại xem đơn hàng còn tồn tại không
@@ -181,4 +241,17 @@ public class OrderServiceImpl implements OrderService {
             throw new APIException("Failed to delete order with id: " + orderId);
         }
     }
-}
\ No newline at end of file
+
+    private static String lineBucket(int lines) {
+        if (lines <= 1) {
+            return "1";
+        }
+        if (lines <= 10) {
+            return "2-10";
+        }
+        if (lines <= 100) {
+            return "11-100";
+        }
+        return "100+";
+    }
+}
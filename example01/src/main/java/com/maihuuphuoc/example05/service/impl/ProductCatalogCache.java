@@ -0,0 +1,116 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.payloads.ProductDTO;
+import com.maihuuphuoc.example05.payloads.ProductResponse;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Read-through cache for the public catalog: single products by id and
+ * listing pages by (scope, category, page, sort). Cached values are shared,
+ * so callers must treat them as read-only.
+ */
+@Component
+public class ProductCatalogCache {
+
+    public enum Scope {
+        ALL, CATEGORY, PROMOTION
+    }
+
+    public record PageKey(Scope scope, Long categoryId, int pageNumber, int pageSize, String sortBy,
+            String sortOrder) {
+
+        public static PageKey all(int pageNumber, int pageSize, String sortBy, String sortOrder) {
+            return new PageKey(Scope.ALL, null, pageNumber, pageSize, sortBy, sortOrder.toLowerCase());
+        }
+
+        public static PageKey category(Long categoryId, int pageNumber, int pageSize, String sortBy,
+                String sortOrder) {
+            return new PageKey(Scope.CATEGORY, categoryId, pageNumber, pageSize, sortBy, sortOrder.toLowerCase());
+        }
+
+        public static PageKey promotion(int pageNumber, int pageSize, String sortBy, String sortOrder) {
+            return new PageKey(Scope.PROMOTION, null, pageNumber, pageSize, sortBy, sortOrder.toLowerCase());
+        }
+
+        boolean affectedBy(Long categoryId) {
+            return scope != Scope.CATEGORY || categoryId == null || categoryId.equals(this.categoryId);
+        }
+    }
+
+    @Value("${catalog.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${catalog.cache.ttl-minutes:5}")
+    private long ttlMinutes;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<Long, ProductDTO> products;
+
+    private Cache<PageKey, ProductResponse> pages;
+
+    @PostConstruct
+    public void init() {
+        products = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        pages = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "catalogProducts");
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "catalogPages");
+    }
+
+    public ProductDTO getProduct(Long productId, Function<Long, ProductDTO> loader) {
+        return products.get(productId, loader);
+    }
+
+    public ProductResponse getPage(PageKey key, Function<PageKey, ProductResponse> loader) {
+        return pages.get(key, loader);
+    }
+
+    /**
+     * Drops the product and every listing page it can appear on: all products,
+     * promotions and its own category.
+     */
+    public void evictProduct(Long productId, Long categoryId) {
+        TransactionHooks.nowAndAfterCommit(() -> {
+            products.invalidate(productId);
+            pages.asMap().keySet().removeIf(key -> key.affectedBy(categoryId));
+        });
+    }
+
+    /**
+     * Drops only the single-product entry, used when stock moves through a cart
+     * and listings can live with the TTL.
+     */
+    public void evictProductOnly(Long productId) {
+        TransactionHooks.nowAndAfterCommit(() -> products.invalidate(productId));
+    }
+
+    public void evictCategory(Long categoryId) {
+        TransactionHooks.nowAndAfterCommit(() -> {
+            products.asMap().values().removeIf(product -> product.getCategory() != null
+                    && categoryId.equals(product.getCategory().getCategoryId()));
+            pages.asMap().keySet().removeIf(key -> key.affectedBy(categoryId));
+        });
+    }
+}
@@ -0,0 +1,471 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.repository.OrderItemRepo;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * "Frequently bought together": for every product, the products that most
+ * often appear in the same order. Each product keeps a fixed array of
+ * {@code product.related.candidates} neighbour counters maintained with the
+ * space-saving algorithm, so memory stays bounded however many distinct pairs
+ * the order history has, and the best {@code product.related.max-results} are
+ * ranked ahead of time for lock-free reads.
+ * <p>
+ * The order history is scanned once, in parallel order id ranges, up to the
+ * highest order id when the scan starts; later orders are added by their
+ * commit hooks, and deleted orders are taken back out. The counters are
+ * written to {@code product.related.snapshot-path} every
+ * {@code product.related.snapshot-interval-ms} and on shutdown; a restart
+ * loads the snapshot and only scans the orders placed after it, unless orders
+ * it counted have been deleted since, in which case the index is rebuilt.
+ */
+@Component
+public class ProductCooccurrenceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ProductCooccurrenceIndex.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x52454c32;
+    private static final int CHUNK_ORDERS = 1000;
+    // Wholesale orders say little about what belongs together and cost n^2 updates
+    private static final int MAX_BASKET_SIZE = 100;
+    private static final long[] NONE = new long[0];
+
+    private final class Neighbours {
+        private final long[] ids = new long[candidates];
+        private final int[] counts = new int[candidates];
+        private int size;
+        private volatile long[] top = NONE;
+
+        synchronized void add(long productId, int count) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == productId) {
+                    counts[i] += count;
+                    return;
+                }
+            }
+            if (size < ids.length) {
+                ids[size] = productId;
+                counts[size++] = count;
+                return;
+            }
+            // Full: the new product takes over the weakest counter and inherits its count
+            int weakest = 0;
+            for (int i = 1; i < size; i++) {
+                if (counts[i] < counts[weakest]) {
+                    weakest = i;
+                }
+            }
+            ids[weakest] = productId;
+            counts[weakest] += count;
+        }
+
+        // Takes back counts of a deleted order; the product goes once nothing is left
+        synchronized void subtract(long productId, int count) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == productId) {
+                    counts[i] -= count;
+                    if (counts[i] <= 0) {
+                        size--;
+                        ids[i] = ids[size];
+                        counts[i] = counts[size];
+                    }
+                    return;
+                }
+            }
+        }
+
+        synchronized void remove(long productId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == productId) {
+                    size--;
+                    ids[i] = ids[size];
+                    counts[i] = counts[size];
+                    rank();
+                    return;
+                }
+            }
+        }
+
+        // Highest counts first, lower product id on ties
+        synchronized void rank() {
+            int length = Math.min(maxResults, size);
+            long[] ranked = new long[length];
+            boolean[] taken = new boolean[size];
+            for (int r = 0; r < length; r++) {
+                int best = -1;
+                for (int i = 0; i < size; i++) {
+                    if (!taken[i] && (best < 0 || counts[i] > counts[best]
+                            || counts[i] == counts[best] && ids[i] < ids[best])) {
+                        best = i;
+                    }
+                }
+                taken[best] = true;
+                ranked[r] = ids[best];
+            }
+            top = ranked;
+        }
+
+        synchronized Counters copy(long productId) {
+            return new Counters(productId, Arrays.copyOf(ids, size), Arrays.copyOf(counts, size));
+        }
+    }
+
+    // The counters of one product as they were when a snapshot was taken
+    private record Counters(long productId, long[] ids, int[] counts) {
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(productId);
+            out.writeInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                out.writeLong(ids[i]);
+                out.writeInt(counts[i]);
+            }
+        }
+    }
+
+    @Value("${product.related.max-results:10}")
+    private int maxResults;
+
+    @Value("${product.related.candidates:64}")
+    private int candidates;
+
+    @Value("${product.related.bootstrap-parallelism:4}")
+    private int parallelism;
+
+    @Value("${product.related.snapshot-path:data/related-products.snapshot}")
+    private String snapshotPath;
+
+    @Autowired
+    private OrderItemRepo orderItemRepo;
+
+    private final Map<Long, Neighbours> neighbours = new ConcurrentHashMap<>();
+
+    // Every order up to this id is counted
+    private final AtomicLong lastOrderId = new AtomicLong();
+
+    // Orders in the counters, checked against the database when a snapshot is restored
+    private final AtomicLong countedOrders = new AtomicLong();
+
+    // Hooks apply an order under the read lock; the write lock sees the counters between orders
+    private final ReentrantReadWriteLock orderLock = new ReentrantReadWriteLock();
+
+    // Orders up to this id are counted by the scan, later ones by their hooks; guarded by orderLock
+    private long scannedThrough = Long.MAX_VALUE;
+
+    private volatile boolean ready;
+
+    private volatile boolean dirty;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrap() {
+        boolean restored = restore();
+        Thread thread = new Thread(() -> catchUp(restored), "related-bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Ids of the products most often bought with the given one, best first. */
+    public long[] related(Long productId, int limit) {
+        Neighbours entry = neighbours.get(productId);
+        if (entry == null) {
+            return NONE;
+        }
+        long[] top = entry.top;
+        return top.length <= limit ? top : Arrays.copyOf(top, Math.max(limit, 0));
+    }
+
+    /** Counts the products of a placed order once it commits. */
+    public void recordOrder(Long orderId, Collection<Long> productIds) {
+        long[] basket = productIds.stream().mapToLong(Long::longValue).distinct().toArray();
+        TransactionHooks.afterCommit(() -> {
+            orderLock.readLock().lock();
+            try {
+                if (orderId <= scannedThrough) {
+                    return;
+                }
+                for (Neighbours entry : addBasket(basket)) {
+                    entry.rank();
+                }
+                countedOrders.incrementAndGet();
+                lastOrderId.accumulateAndGet(orderId, Math::max);
+                dirty = true;
+            } finally {
+                orderLock.readLock().unlock();
+            }
+        });
+    }
+
+    /** Takes the products of a deleted order back out once the deletion commits. */
+    public void removeOrder(Long orderId, Collection<Long> productIds) {
+        long[] basket = productIds.stream().mapToLong(Long::longValue).distinct().toArray();
+        TransactionHooks.afterCommit(() -> {
+            orderLock.readLock().lock();
+            try {
+                // Until the scan is done it cannot be told whether it counted the order; the order
+                // count then no longer matches and the next restart rebuilds instead of restoring
+                if (orderId <= scannedThrough && !ready) {
+                    return;
+                }
+                for (Neighbours entry : subtractBasket(basket)) {
+                    entry.rank();
+                }
+                countedOrders.decrementAndGet();
+                dirty = true;
+            } finally {
+                orderLock.readLock().unlock();
+            }
+        });
+    }
+
+    public void remove(Long productId) {
+        TransactionHooks.afterCommit(() -> {
+            Neighbours removed = neighbours.remove(productId);
+            if (removed == null) {
+                return;
+            }
+            // The relation is mostly symmetric, so this clears nearly every list that points back
+            long[] ids;
+            int size;
+            synchronized (removed) {
+                ids = Arrays.copyOf(removed.ids, removed.size);
+                size = removed.size;
+            }
+            for (int i = 0; i < size; i++) {
+                Neighbours other = neighbours.get(ids[i]);
+                if (other != null) {
+                    other.remove(productId);
+                }
+            }
+            dirty = true;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${product.related.snapshot-interval-ms:300000}",
+            initialDelayString = "${product.related.snapshot-interval-ms:300000}")
+    public synchronized void snapshot() {
+        // A half-built index would hide the unscanned orders from the next restart
+        if (!ready || !dirty) {
+            return;
+        }
+        dirty = false;
+        long start = System.currentTimeMillis();
+        // Orders committing meanwhile wait only for the copy, so the counters, watermark and order count agree
+        long watermark;
+        long orders;
+        List<Counters> counters = new ArrayList<>(neighbours.size());
+        orderLock.writeLock().lock();
+        try {
+            watermark = lastOrderId.get();
+            orders = countedOrders.get();
+            neighbours.forEach((productId, entry) -> counters.add(entry.copy(productId)));
+        } finally {
+            orderLock.writeLock().unlock();
+        }
+
+        Path path = Paths.get(snapshotPath);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(watermark);
+                out.writeLong(orders);
+                out.writeInt(counters.size());
+                for (Counters entry : counters) {
+                    entry.write(out);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Related products snapshot written: {} products up to order {} in {} ms", counters.size(),
+                    watermark, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            dirty = true;
+            logger.warn("Could not write the related products snapshot to {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    private boolean restore() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                logger.warn("Ignoring {}: not a related products snapshot", path);
+                return false;
+            }
+            long watermark = in.readLong();
+            long orders = in.readLong();
+            if (orderItemRepo.countOrdersUpTo(watermark) != orders) {
+                logger.info("Orders counted in {} were deleted since it was written, rebuilding from orders", path);
+                return false;
+            }
+            int products = in.readInt();
+            for (int p = 0; p < products; p++) {
+                Neighbours entry = entryOf(in.readLong());
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    entry.add(in.readLong(), in.readInt());
+                }
+            }
+            lastOrderId.accumulateAndGet(watermark, Math::max);
+            countedOrders.addAndGet(orders);
+            logger.info("Related products snapshot loaded: {} products up to order {} in {} ms", products,
+                    watermark, System.currentTimeMillis() - start);
+            return true;
+        } catch (IOException e) {
+            neighbours.clear();
+            logger.warn("Could not read the related products snapshot {}, rebuilding from orders", path, e);
+            return false;
+        }
+    }
+
+    private void catchUp(boolean restored) {
+        long start = System.currentTimeMillis();
+        List<Object[]> range;
+        // Held while the watermark is read, so no order after it commits unseen by both the scan and the hooks
+        orderLock.writeLock().lock();
+        try {
+            range = orderItemRepo.findOrderIdRangeAfter(lastOrderId.get());
+            scannedThrough = range.isEmpty() || range.get(0)[1] == null ? lastOrderId.get() : (Long) range.get(0)[1];
+        } finally {
+            orderLock.writeLock().unlock();
+        }
+        if (!range.isEmpty() && range.get(0)[0] != null) {
+            long first = (Long) range.get(0)[0];
+            long last = (Long) range.get(0)[1];
+
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "related-bootstrap-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<CompletableFuture<Void>> chunks = new ArrayList<>();
+                for (long from = first; from <= last; from += CHUNK_ORDERS) {
+                    long after = from - 1;
+                    long to = Math.min(last, from + CHUNK_ORDERS - 1);
+                    chunks.add(CompletableFuture.runAsync(() -> scan(after, to), workers));
+                }
+                CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).join();
+            } catch (RuntimeException e) {
+                logger.error("Could not build the related products index", e);
+                return;
+            } finally {
+                workers.shutdown();
+            }
+            lastOrderId.accumulateAndGet(last, Math::max);
+            dirty = true;
+        }
+        neighbours.values().forEach(Neighbours::rank);
+        ready = true;
+        logger.info("Related products index {}: {} products up to order {} in {} ms",
+                restored ? "caught up" : "built", neighbours.size(), lastOrderId.get(),
+                System.currentTimeMillis() - start);
+    }
+
+    private void scan(long afterOrderId, long lastOrderId) {
+        List<Object[]> rows = orderItemRepo.findBasketRowsBetween(afterOrderId, lastOrderId);
+        long[] basket = new long[8];
+        int size = 0;
+        Long orderId = null;
+        for (Object[] row : rows) {
+            if (!row[0].equals(orderId)) {
+                addBasket(Arrays.stream(basket, 0, size).distinct().toArray());
+                orderId = (Long) row[0];
+                size = 0;
+                countedOrders.incrementAndGet();
+            }
+            if (size == basket.length) {
+                basket = Arrays.copyOf(basket, size * 2);
+            }
+            basket[size++] = (Long) row[1];
+        }
+        addBasket(Arrays.stream(basket, 0, size).distinct().toArray());
+    }
+
+    // Counts every ordered pair of the basket and returns the touched entries
+    private List<Neighbours> addBasket(long[] basket) {
+        if (basket.length < 2 || basket.length > MAX_BASKET_SIZE) {
+            return List.of();
+        }
+        List<Neighbours> touched = new ArrayList<>(basket.length);
+        for (long productId : basket) {
+            Neighbours entry = entryOf(productId);
+            for (long other : basket) {
+                if (other != productId) {
+                    entry.add(other, 1);
+                }
+            }
+            touched.add(entry);
+        }
+        return touched;
+    }
+
+    private List<Neighbours> subtractBasket(long[] basket) {
+        if (basket.length < 2 || basket.length > MAX_BASKET_SIZE) {
+            return List.of();
+        }
+        List<Neighbours> touched = new ArrayList<>(basket.length);
+        for (long productId : basket) {
+            Neighbours entry = neighbours.get(productId);
+            if (entry == null) {
+                continue;
+            }
+            for (long other : basket) {
+                if (other != productId) {
+                    entry.subtract(other, 1);
+                }
+            }
+            touched.add(entry);
+        }
+        return touched;
+    }
+
+    private Neighbours entryOf(long productId) {
+        return neighbours.computeIfAbsent(productId, id -> new Neighbours());
+    }
+}
@@ -0,0 +1,490 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * In-process bitmap index for faceted filtering by category, special price,
+ * discount and stock. Every indexed product gets a dense ordinal; price and
+ * discount bands and the in-stock flag are bitsets over those ordinals, and
+ * each category keeps the sorted ordinals of its products. A query ANDs the
+ * selected filters word by word and counts every facet against the other
+ * filters, so the counts show what each choice would return.
+ */
+@Component
+public class ProductFacetIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ProductFacetIndex.class);
+
+    private static final int BUILD_BATCH_SIZE = 5000;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    public record Filter(Set<Long> categoryIds, Double minPrice, Double maxPrice, Double minDiscount,
+            Boolean inStock) {
+    }
+
+    /** Matching productIds of the requested page, in indexing order, and the facet counts. */
+    public record Result(long total, List<Long> productIds, Map<String, Map<String, Long>> facets) {
+    }
+
+    private record Doc(long productId, Long categoryId, double specialPrice, double discount, boolean inStock) {
+    }
+
+    /** Sorted ordinals of one category's products. */
+    private static final class Postings {
+        private int[] ordinals = new int[16];
+        private int size;
+
+        void add(int ordinal) {
+            int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, at, ordinals, at + 1, size - at);
+            ordinals[at] = ordinal;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (at >= 0) {
+                System.arraycopy(ordinals, at + 1, ordinals, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+
+    @Value("${product.facets.price-bands:0,50,100,200,500,1000,2000,5000}")
+    private double[] priceEdges;
+
+    @Value("${product.facets.discount-bands:0,10,25,50}")
+    private double[] discountEdges;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Object[] stockLocks = new Object[64];
+
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+
+    private final Map<Long, Postings> categories = new TreeMap<>();
+
+    private int size;
+
+    private long[] productIdOf = new long[INITIAL_CAPACITY];
+    private Long[] categoryOf = new Long[INITIAL_CAPACITY];
+    private double[] priceOf = new double[INITIAL_CAPACITY];
+    private double[] discountOf = new double[INITIAL_CAPACITY];
+
+    private long[] live = new long[INITIAL_CAPACITY / 64];
+    private long[] inStock = new long[INITIAL_CAPACITY / 64];
+    private long[][] priceBands;
+    private long[][] discountBands;
+
+    // Products changed by a commit while the index is being built, and the stock flags read meanwhile;
+    // guarded by the write lock, null otherwise
+    private Set<Long> changedDuringBuild;
+    private Map<Long, Boolean> stockDuringBuild;
+
+    public ProductFacetIndex() {
+        for (int i = 0; i < stockLocks.length; i++) {
+            stockLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        priceBands = new long[priceEdges.length][live.length];
+        discountBands = new long[discountEdges.length][live.length];
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        write(() -> {
+            changedDuringBuild = new HashSet<>();
+            stockDuringBuild = new HashMap<>();
+        });
+        try {
+            long lastProductId = 0L;
+            List<Object[]> rows;
+            do {
+                rows = productRepo.findFacetRowsAfter(lastProductId, PageRequest.of(0, BUILD_BATCH_SIZE));
+                lock.writeLock().lock();
+                try {
+                    for (Object[] row : rows) {
+                        Long productId = (Long) row[0];
+                        lastProductId = productId;
+                        // A row read before a commit must not undo what that commit indexed or removed
+                        if (changedDuringBuild.contains(productId)) {
+                            continue;
+                        }
+                        Integer quantity = (Integer) row[4];
+                        Boolean stocked = stockDuringBuild.get(productId);
+                        put(new Doc(productId, (Long) row[1], ((Number) row[2]).doubleValue(),
+                                ((Number) row[3]).doubleValue(),
+                                stocked != null ? stocked : quantity != null && quantity > 0));
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } while (rows.size() == BUILD_BATCH_SIZE);
+        } finally {
+            write(() -> {
+                changedDuringBuild = null;
+                stockDuringBuild = null;
+            });
+        }
+        logger.info("Product facet index built: {} products, {} categories in {} ms",
+                ordinals.size(), categories.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * (Re)indexes the product once the current transaction commits.
+     */
+    public void index(Product product) {
+        Doc doc = new Doc(product.getProductId(),
+                product.getCategory() != null ? product.getCategory().getCategoryId() : null,
+                product.getSpecialPrice(), product.getDiscount(),
+                product.getQuantity() != null && product.getQuantity() > 0);
+        TransactionHooks.afterCommit(() -> write(() -> {
+            changed(doc.productId());
+            put(doc);
+        }));
+    }
+
+    public void remove(Long productId) {
+        TransactionHooks.afterCommit(() -> write(() -> {
+            changed(productId);
+            Integer ordinal = ordinals.remove(productId);
+            if (ordinal != null) {
+                clearFacets(ordinal);
+                clear(live, ordinal);
+            }
+        }));
+    }
+
+    /**
+     * Re-reads the product's stock once the current transaction commits. The
+     * flag is not taken from the transaction: commits of the same product can
+     * run their hooks in either order, and only a read after the last of them
+     * sees the final quantity.
+     */
+    public void refreshStock(Long productId) {
+        TransactionHooks.afterCommit(() -> {
+            // Serialized per product, so the flag read last is also written last
+            synchronized (stockLocks[Math.floorMod(productId.hashCode(), stockLocks.length)]) {
+                Integer quantity = productRepo.findQuantityById(productId);
+                boolean stocked = quantity != null && quantity > 0;
+                write(() -> {
+                    // A product the build has not reached yet takes this flag instead of its row's
+                    if (stockDuringBuild != null) {
+                        stockDuringBuild.put(productId, stocked);
+                    }
+                    Integer ordinal = ordinals.get(productId);
+                    if (ordinal == null) {
+                        return;
+                    }
+                    if (stocked) {
+                        set(inStock, ordinal);
+                    } else {
+                        clear(inStock, ordinal);
+                    }
+                });
+            }
+        });
+    }
+
+    public Result query(Filter filter, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            long[] byCategory = filter.categoryIds() != null && !filter.categoryIds().isEmpty()
+                    ? categoryBitmap(filter.categoryIds())
+                    : null;
+            long[] byPrice = filter.minPrice() != null || filter.maxPrice() != null
+                    ? rangeBitmap(priceBands, priceEdges, priceOf, filter.minPrice(), filter.maxPrice())
+                    : null;
+            long[] byDiscount = filter.minDiscount() != null
+                    ? rangeBitmap(discountBands, discountEdges, discountOf, filter.minDiscount(), null)
+                    : null;
+            long[] byStock = filter.inStock() == null ? null
+                    : filter.inStock() ? inStock : andNot(live, inStock);
+
+            long[] matches = and(live, byCategory, byPrice, byDiscount, byStock);
+            List<Long> productIds = new ArrayList<>(limit);
+            long total = 0;
+            for (int w = 0; w < matches.length; w++) {
+                long word = matches[w];
+                int bits = Long.bitCount(word);
+                if (productIds.size() < limit && total + bits > offset) {
+                    long position = total;
+                    while (word != 0) {
+                        int ordinal = w * 64 + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        if (position++ >= offset && productIds.size() < limit) {
+                            productIds.add(productIdOf[ordinal]);
+                        }
+                    }
+                }
+                total += bits;
+            }
+
+            Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+            facets.put("category", categoryCounts(and(live, byPrice, byDiscount, byStock),
+                    byPrice == null && byDiscount == null && byStock == null));
+            facets.put("price", bandCounts(and(live, byCategory, byDiscount, byStock), priceBands, priceEdges));
+            facets.put("discount", bandCounts(and(live, byCategory, byPrice, byStock), discountBands, discountEdges));
+            long[] stockBase = and(live, byCategory, byPrice, byDiscount);
+            long available = andCardinality(stockBase, inStock);
+            Map<String, Long> stock = new LinkedHashMap<>();
+            stock.put("true", available);
+            stock.put("false", cardinality(stockBase) - available);
+            facets.put("inStock", stock);
+
+            return new Result(total, productIds, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void changed(Long productId) {
+        if (changedDuringBuild != null) {
+            changedDuringBuild.add(productId);
+        }
+    }
+
+    private void put(Doc doc) {
+        Integer ordinal = ordinals.get(doc.productId());
+        if (ordinal == null) {
+            ordinal = size++;
+            ensureCapacity(size);
+            ordinals.put(doc.productId(), ordinal);
+        } else {
+            clearFacets(ordinal);
+        }
+        productIdOf[ordinal] = doc.productId();
+        categoryOf[ordinal] = doc.categoryId();
+        priceOf[ordinal] = doc.specialPrice();
+        discountOf[ordinal] = doc.discount();
+        set(live, ordinal);
+        set(priceBands[band(priceEdges, doc.specialPrice())], ordinal);
+        set(discountBands[band(discountEdges, doc.discount())], ordinal);
+        if (doc.inStock()) {
+            set(inStock, ordinal);
+        }
+        if (doc.categoryId() != null) {
+            categories.computeIfAbsent(doc.categoryId(), key -> new Postings()).add(ordinal);
+        }
+    }
+
+    private void clearFacets(int ordinal) {
+        clear(priceBands[band(priceEdges, priceOf[ordinal])], ordinal);
+        clear(discountBands[band(discountEdges, discountOf[ordinal])], ordinal);
+        clear(inStock, ordinal);
+        Long categoryId = categoryOf[ordinal];
+        if (categoryId != null) {
+            Postings postings = categories.get(categoryId);
+            if (postings != null) {
+                postings.remove(ordinal);
+                if (postings.size == 0) {
+                    categories.remove(categoryId);
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int ordinals) {
+        if (ordinals <= productIdOf.length) {
+            return;
+        }
+        int capacity = productIdOf.length * 2;
+        productIdOf = Arrays.copyOf(productIdOf, capacity);
+        categoryOf = Arrays.copyOf(categoryOf, capacity);
+        priceOf = Arrays.copyOf(priceOf, capacity);
+        discountOf = Arrays.copyOf(discountOf, capacity);
+        int words = capacity / 64;
+        live = Arrays.copyOf(live, words);
+        inStock = Arrays.copyOf(inStock, words);
+        for (int i = 0; i < priceBands.length; i++) {
+            priceBands[i] = Arrays.copyOf(priceBands[i], words);
+        }
+        for (int i = 0; i < discountBands.length; i++) {
+            discountBands[i] = Arrays.copyOf(discountBands[i], words);
+        }
+    }
+
+    private long[] categoryBitmap(Set<Long> categoryIds) {
+        long[] bitmap = new long[live.length];
+        for (Long categoryId : categoryIds) {
+            Postings postings = categories.get(categoryId);
+            if (postings != null) {
+                for (int i = 0; i < postings.size; i++) {
+                    set(bitmap, postings.ordinals[i]);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Values in [min, max]: bands entirely inside the range are taken whole,
+     * only the bands cut by a bound are checked value by value.
+     */
+    private static long[] rangeBitmap(long[][] bands, double[] edges, double[] values, Double min, Double max) {
+        long[] bitmap = new long[bands[0].length];
+        for (int i = 0; i < bands.length; i++) {
+            double low = i == 0 ? Double.NEGATIVE_INFINITY : edges[i];
+            double high = i + 1 < edges.length ? edges[i + 1] : Double.POSITIVE_INFINITY;
+            if ((max != null && low > max) || (min != null && high <= min)) {
+                continue;
+            }
+            long[] band = bands[i];
+            if ((min == null || min <= low) && (max == null || high <= max)) {
+                for (int w = 0; w < bitmap.length; w++) {
+                    bitmap[w] |= band[w];
+                }
+                continue;
+            }
+            for (int w = 0; w < band.length; w++) {
+                long word = band[w];
+                while (word != 0) {
+                    int ordinal = w * 64 + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    double value = values[ordinal];
+                    if ((min == null || value >= min) && (max == null || value <= max)) {
+                        set(bitmap, ordinal);
+                    }
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    private Map<String, Long> categoryCounts(long[] base, boolean unfiltered) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        categories.forEach((categoryId, postings) -> {
+            long count = 0;
+            if (unfiltered) {
+                count = postings.size;
+            } else {
+                for (int i = 0; i < postings.size; i++) {
+                    if (isSet(base, postings.ordinals[i])) {
+                        count++;
+                    }
+                }
+            }
+            if (count > 0) {
+                counts.put(categoryId.toString(), count);
+            }
+        });
+        return counts;
+    }
+
+    private static Map<String, Long> bandCounts(long[] base, long[][] bands, double[] edges) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < bands.length; i++) {
+            String label = i + 1 < edges.length ? format(edges[i]) + "-" + format(edges[i + 1])
+                    : format(edges[i]) + "+";
+            counts.put(label, andCardinality(base, bands[i]));
+        }
+        return counts;
+    }
+
+    private static int band(double[] edges, double value) {
+        int band = 0;
+        while (band + 1 < edges.length && value >= edges[band + 1]) {
+            band++;
+        }
+        return band;
+    }
+
+    private static String format(double edge) {
+        return BigDecimal.valueOf(edge).stripTrailingZeros().toPlainString();
+    }
+
+    private static long[] and(long[] first, long[]... others) {
+        long[] result = first.clone();
+        for (long[] other : others) {
+            if (other != null) {
+                for (int w = 0; w < result.length; w++) {
+                    result[w] &= other[w];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long[] andNot(long[] bitmap, long[] excluded) {
+        long[] result = bitmap.clone();
+        for (int w = 0; w < result.length; w++) {
+            result[w] &= ~excluded[w];
+        }
+        return result;
+    }
+
+    private static long andCardinality(long[] a, long[] b) {
+        long count = 0;
+        for (int w = 0; w < a.length; w++) {
+            count += Long.bitCount(a[w] & b[w]);
+        }
+        return count;
+    }
+
+    private static long cardinality(long[] bitmap) {
+        long count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static void set(long[] bitmap, int ordinal) {
+        bitmap[ordinal >>> 6] |= 1L << ordinal;
+    }
+
+    private static void clear(long[] bitmap, int ordinal) {
+        bitmap[ordinal >>> 6] &= ~(1L << ordinal);
+    }
+
+    private static boolean isSet(long[] bitmap, int ordinal) {
+        return (bitmap[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.ProductKey;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+/**
+ * Fills in the fingerprint of products saved before the column existed. New
+ * and updated products get theirs from the entity itself. Each batch of rows
+ * is written with one JDBC batch. When two existing products collide, the
+ * later one keeps a null fingerprint and is logged so it can be merged by
+ * hand; the entity leaves it null until its name or description changes.
+ */
+@Component
+public class ProductFingerprintBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(ProductFingerprintBackfill.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long lastProductId = 0L;
+        int updated = 0;
+        Map<Long, ProductKey> keys;
+        do {
+            keys = productRepo.findKeysWithoutFingerprint(lastProductId, BATCH_SIZE);
+            Map<Long, String> fingerprints = new LinkedHashMap<>();
+            for (Map.Entry<Long, ProductKey> entry : keys.entrySet()) {
+                ProductKey key = entry.getValue();
+                fingerprints.put(entry.getKey(),
+                        Product.fingerprintOf(key.categoryId(), key.productName(), key.description()));
+                lastProductId = entry.getKey();
+            }
+            Set<String> taken = productRepo.findExistingFingerprints(fingerprints.values());
+
+            // The first product with a fingerprint keeps it, in the database or earlier in the batch
+            Map<Long, String> batch = new LinkedHashMap<>();
+            for (Map.Entry<Long, String> entry : fingerprints.entrySet()) {
+                if (taken.add(entry.getValue())) {
+                    batch.put(entry.getKey(), entry.getValue());
+                } else {
+                    duplicate(entry.getKey(), keys.get(entry.getKey()));
+                }
+            }
+            try {
+                productRepo.setFingerprints(batch);
+                updated += batch.size();
+            } catch (DuplicateKeyException e) {
+                // A product saved meanwhile took one of them; settle the batch row by row
+                for (Map.Entry<Long, String> entry : batch.entrySet()) {
+                    if (productRepo.setFingerprint(entry.getKey(), entry.getValue())) {
+                        updated++;
+                    } else {
+                        duplicate(entry.getKey(), keys.get(entry.getKey()));
+                    }
+                }
+            }
+        } while (keys.size() == BATCH_SIZE);
+        if (updated > 0) {
+            logger.info("Fingerprinted {} existing products", updated);
+        }
+    }
+
+    private static void duplicate(Long productId, ProductKey key) {
+        logger.warn("Product {} duplicates another product of category {}: {}",
+                productId, key.categoryId(), key.productName());
+    }
+}
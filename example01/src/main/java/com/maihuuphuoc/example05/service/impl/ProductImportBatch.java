@@ -0,0 +1,58 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+
+/**
+ * Inserts one batch of imported products in its own transaction. The rows go
+ * out as a single JDBC batch, and the persistence context is cleared
+ * afterwards so a long import does not accumulate entities.
+ */
+@Transactional
+@Component
+public class ProductImportBatch {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private ProductFacetIndex facetIndex;
+
+    @Autowired
+    private ProductSuggestIndex suggestIndex;
+
+    public void insert(List<Product> products) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(products.size());
+        Set<Long> categoryIds = new HashSet<>();
+        for (Product product : products) {
+            Long categoryId = product.getCategory().getCategoryId();
+            product.setCategory(entityManager.getReference(Category.class, categoryId));
+            entityManager.persist(product);
+            searchIndex.index(product);
+            facetIndex.index(product);
+            suggestIndex.index(product);
+            categoryIds.add(categoryId);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        categoryIds.forEach(catalogCache::evictCategory);
+    }
+}
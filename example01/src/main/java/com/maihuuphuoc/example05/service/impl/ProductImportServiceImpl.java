@@ -0,0 +1,326 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.exceptions.APIException;
+import com.maihuuphuoc.example05.payloads.ProductImportReport;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductKey;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+import com.maihuuphuoc.example05.service.ProductImportService;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+/**
+ * Imports products from a CSV or NDJSON body, reading it record by record as
+ * it arrives; a quoted CSV field may span lines. Categories and the keys of
+ * existing products are loaded into memory once; valid rows are inserted
+ * through {@link ProductImportBatch}, one transaction per batch. When a batch
+ * fails its rows are retried one per transaction, so a bad row only rejects
+ * itself. Not transactional on purpose.
+ */
+@Service
+public class ProductImportServiceImpl implements ProductImportService {
+    private static final Logger logger = LoggerFactory.getLogger(ProductImportServiceImpl.class);
+
+    private record Row(long line, ProductKey key, Product product) {
+    }
+
+    // An unbalanced quote would otherwise pull the rest of the body into one record
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    @Value("${product.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${product.import.max-errors:1000}")
+    private int maxErrors;
+
+    @Autowired
+    private CategoryRepo categoryRepo;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private ProductImportBatch importBatch;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public ProductImportReport importProducts(InputStream body, Format format) throws IOException {
+        long start = System.currentTimeMillis();
+        ProductImportReport report = new ProductImportReport();
+
+        Map<Long, Category> categoriesById = new HashMap<>();
+        Map<String, Category> categoriesByName = new HashMap<>();
+        for (Category category : categoryRepo.findAll()) {
+            categoriesById.put(category.getCategoryId(), category);
+            categoriesByName.putIfAbsent(category.getCategoryName().toLowerCase(Locale.ROOT), category);
+        }
+        Set<ProductKey> keys = new HashSet<>();
+        productRepo.forEachProductKey(keys::add);
+
+        List<Row> pending = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            List<String> header = null;
+            long line = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                long recordLine = line;
+                if (format == Format.CSV) {
+                    // A quoted field may hold line breaks, as the export writes multi-line descriptions
+                    int quotes = countQuotes(text);
+                    if (quotes % 2 != 0) {
+                        StringBuilder record = new StringBuilder(text);
+                        String next;
+                        while (quotes % 2 != 0 && record.length() <= MAX_RECORD_LENGTH
+                                && (next = reader.readLine()) != null) {
+                            line++;
+                            quotes += countQuotes(next);
+                            record.append('\n').append(next);
+                        }
+                        text = record.toString();
+                    }
+                }
+                if (text.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && header == null) {
+                    header = parseCsvLine(text.replace("\uFEFF", "")).stream().map(String::trim).toList();
+                    continue;
+                }
+                report.setRowsRead(report.getRowsRead() + 1);
+                try {
+                    Map<String, String> fields = format == Format.CSV ? csvFields(header, text) : jsonFields(text);
+                    Product product = toProduct(fields, categoriesById, categoriesByName);
+                    ProductKey key = new ProductKey(product.getCategory().getCategoryId(), product.getProductName(),
+                            product.getDescription());
+                    if (!keys.add(key)) {
+                        report.setDuplicates(report.getDuplicates() + 1);
+                        addError(report, recordLine, "Product already exists !!!");
+                        continue;
+                    }
+                    pending.add(new Row(recordLine, key, product));
+                    if (pending.size() >= batchSize) {
+                        insert(pending, keys, report);
+                    }
+                } catch (APIException e) {
+                    reject(report, recordLine, e.getMessage());
+                } catch (JsonProcessingException e) {
+                    reject(report, recordLine, "Invalid JSON: " + e.getOriginalMessage());
+                }
+            }
+        }
+        insert(pending, keys, report);
+
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        report.setRowsPerSecond(report.getRowsRead() * 1000.0 / Math.max(report.getElapsedMillis(), 1));
+        logger.info("Product import: {} rows read, {} imported, {} duplicates, {} rejected in {} ms ({} rows/s)",
+                report.getRowsRead(), report.getImported(), report.getDuplicates(), report.getRejected(),
+                report.getElapsedMillis(), Math.round(report.getRowsPerSecond()));
+        return report;
+    }
+
+    private void insert(List<Row> pending, Set<ProductKey> keys, ProductImportReport report) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            importBatch.insert(pending.stream().map(Row::product).toList());
+            report.setImported(report.getImported() + pending.size());
+        } catch (RuntimeException e) {
+            if (pending.size() == 1) {
+                notSaved(pending.get(0), keys, report, e);
+            } else {
+                // The batch rolled back as a whole; one transaction per row finds the rows that failed it
+                logger.warn("Product import batch failed, retrying its {} rows one by one", pending.size(), e);
+                for (Row row : pending) {
+                    // The id given by the rolled back insert was never stored
+                    row.product().setProductId(null);
+                    try {
+                        importBatch.insert(List.of(row.product()));
+                        report.setImported(report.getImported() + 1);
+                    } catch (RuntimeException rowError) {
+                        notSaved(row, keys, report, rowError);
+                    }
+                }
+            }
+        }
+        pending.clear();
+    }
+
+    private void notSaved(Row row, Set<ProductKey> keys, ProductImportReport report, RuntimeException e) {
+        logger.error("Product import row {} failed", row.line(), e);
+        keys.remove(row.key());
+        reject(report, row.line(), "Not saved: " + e.getMessage());
+    }
+
+    private Product toProduct(Map<String, String> fields, Map<Long, Category> categoriesById,
+            Map<String, Category> categoriesByName) {
+        Product product = new Product();
+        product.setProductName(fields.get("productName"));
+        product.setDescription(fields.get("description"));
+        long quantity = parseNumber(fields, "quantity", 0).longValue();
+        // Narrowing would silently turn an out-of-range quantity into another stock level
+        if (quantity != (int) quantity) {
+            throw new APIException("Invalid quantity: " + fields.get("quantity"));
+        }
+        product.setQuantity((int) quantity);
+        product.setPrice(parseNumber(fields, "price", null).doubleValue());
+        product.setDiscount(parseNumber(fields, "discount", 0).doubleValue());
+
+        Set<ConstraintViolation<Product>> violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            throw new APIException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+        if (product.getQuantity() < 0 || product.getPrice() < 0
+                || product.getDiscount() < 0 || product.getDiscount() > 100) {
+            throw new APIException("quantity and price must not be negative, discount must be between 0 and 100");
+        }
+
+        Category category;
+        String categoryId = fields.get("categoryId");
+        if (categoryId != null && !categoryId.isBlank()) {
+            category = categoriesById.get(parseNumber(fields, "categoryId", null).longValue());
+        } else {
+            String categoryName = fields.get("categoryName");
+            category = categoryName != null ? categoriesByName.get(categoryName.trim().toLowerCase(Locale.ROOT))
+                    : null;
+        }
+        if (category == null) {
+            throw new APIException("Unknown category");
+        }
+        product.setCategory(category);
+        product.setImage("default.png");
+        product.setSpecialPrice(product.getPrice() - ((product.getDiscount() * 0.01) * product.getPrice()));
+        return product;
+    }
+
+    private static Number parseNumber(Map<String, String> fields, String name, Number defaultValue) {
+        String value = fields.get(name);
+        if (value == null || value.isBlank()) {
+            if (defaultValue == null) {
+                throw new APIException(name + " is required");
+            }
+            return defaultValue;
+        }
+        try {
+            return name.equals("price") || name.equals("discount") ? Double.parseDouble(value.trim())
+                    : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new APIException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static Map<String, String> csvFields(List<String> header, String text) {
+        List<String> values = parseCsvLine(text);
+        if (values.size() != header.size()) {
+            throw new APIException("Expected " + header.size() + " columns but found " + values.size());
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            fields.put(header.get(i), values.get(i));
+        }
+        return fields;
+    }
+
+    private Map<String, String> jsonFields(String text) throws JsonProcessingException {
+        JsonNode node = objectMapper.readTree(text);
+        if (!node.isObject()) {
+            throw new APIException("Expected a JSON object");
+        }
+        Map<String, String> fields = new HashMap<>();
+        node.fields().forEachRemaining(field -> {
+            if (!field.getValue().isNull()) {
+                fields.put(field.getKey(), field.getValue().asText());
+            }
+        });
+        return fields;
+    }
+
+    // Quotes always pair up in a complete record, doubled quotes included
+    private static int countQuotes(String text) {
+        int quotes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    // One CSV record; quoted fields may contain commas, doubled quotes and line breaks
+    private static List<String> parseCsvLine(String text) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new APIException("Unterminated quoted field");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private void reject(ProductImportReport report, long line, String message) {
+        report.setRejected(report.getRejected() + 1);
+        addError(report, line, message);
+    }
+
+    private void addError(ProductImportReport report, long line, String message) {
+        if (report.getErrors().size() < maxErrors) {
+            report.getErrors().add(new ProductImportReport.RowError(line, message));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+/**
+ * In-process inverted index over product name and description. Terms are
+ * lower-cased and stripped of Vietnamese diacritics, so "điện thoại",
+ * "dien thoai" and "Điện" all match the same products. Every query token of
+ * at least {@value #MIN_PREFIX_LENGTH} characters is matched as a prefix of
+ * every term it starts, shorter ones as whole terms; exact term hits and name
+ * hits rank higher. A search keeps only the hits up to the requested page in
+ * a bounded heap, and counts the rest.
+ */
+@Component
+public class ProductSearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int EXACT_MATCH_BOOST = 2;
+    static final int MIN_PREFIX_LENGTH = 3;
+    private static final int BUILD_BATCH_SIZE = 5000;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    public record Hit(long productId, Long categoryId, String productName, double price, double discount,
+            double specialPrice, int score) {
+    }
+
+    /** The first hits in the requested order, and how many products matched in all. */
+    public record Matches(List<Hit> hits, int total) {
+    }
+
+    private record Doc(long productId, Long categoryId, String productName, double price, double discount,
+            double specialPrice, Map<String, Integer> terms) {
+    }
+
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListMap<String, Map<Long, Integer>> postings = new ConcurrentSkipListMap<>();
+
+    // Products changed by a commit while the index is being built; guarded by this, null otherwise
+    private Set<Long> changedDuringBuild;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            changedDuringBuild = new HashSet<>();
+        }
+        try {
+            long lastProductId = 0L;
+            List<Object[]> rows;
+            do {
+                rows = productRepo.findIndexRowsAfter(lastProductId, PageRequest.of(0, BUILD_BATCH_SIZE));
+                for (Object[] row : rows) {
+                    Doc doc = toDoc(row);
+                    synchronized (this) {
+                        // A row read before a commit must not undo what that commit indexed or removed
+                        if (!changedDuringBuild.contains(doc.productId())) {
+                            removeDoc(doc.productId());
+                            put(doc);
+                        }
+                    }
+                    lastProductId = doc.productId();
+                }
+            } while (rows.size() == BUILD_BATCH_SIZE);
+        } finally {
+            synchronized (this) {
+                changedDuringBuild = null;
+            }
+        }
+        logger.info("Product search index built: {} products, {} terms in {} ms",
+                docs.size(), postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * (Re)indexes the product once the current transaction commits.
+     */
+    public void index(Product product) {
+        Doc doc = toDoc(product);
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                changed(doc.productId());
+                removeDoc(doc.productId());
+                put(doc);
+            }
+        });
+    }
+
+    public void remove(Long productId) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                changed(productId);
+                removeDoc(productId);
+            }
+        });
+    }
+
+    /**
+     * Returns the first {@code limit} products matching all tokens of the
+     * keyword in the given order, optionally restricted to one category (null
+     * or 0 means any), along with the number of all matching products.
+     */
+    public Matches search(String keyword, Long categoryId, Comparator<Hit> order, int limit) {
+        Map<Long, Integer> scores = null;
+        for (String token : new LinkedHashSet<>(tokenize(keyword))) {
+            Map<Long, Integer> matches = match(token);
+            if (scores == null) {
+                scores = matches;
+            } else {
+                Map<Long, Integer> smaller = scores.size() <= matches.size() ? scores : matches;
+                Map<Long, Integer> larger = smaller == scores ? matches : scores;
+                Map<Long, Integer> merged = new HashMap<>();
+                smaller.forEach((productId, score) -> {
+                    Integer other = larger.get(productId);
+                    if (other != null) {
+                        merged.put(productId, score + other);
+                    }
+                });
+                scores = merged;
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        if (scores == null) {
+            return new Matches(List.of(), 0);
+        }
+
+        // The head is the worst hit kept, so a better one replaces it in O(log limit)
+        PriorityQueue<Hit> top = new PriorityQueue<>(order.reversed());
+        boolean anyCategory = categoryId == null || categoryId == 0;
+        int total = 0;
+        for (Map.Entry<Long, Integer> entry : scores.entrySet()) {
+            Doc doc = docs.get(entry.getKey());
+            if (doc == null || !(anyCategory || categoryId.equals(doc.categoryId()))) {
+                continue;
+            }
+            total++;
+            Hit hit = new Hit(doc.productId(), doc.categoryId(), doc.productName(), doc.price(), doc.discount(),
+                    doc.specialPrice(), entry.getValue());
+            if (top.size() < limit) {
+                top.add(hit);
+            } else if (limit > 0 && order.compare(hit, top.peek()) < 0) {
+                top.poll();
+                top.add(hit);
+            }
+        }
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(order);
+        return new Matches(hits, total);
+    }
+
+    /**
+     * Ordering for search hits: by relevance unless one of the indexed product
+     * fields is requested.
+     */
+    public static Comparator<Hit> ordering(String sortBy, String sortOrder) {
+        Comparator<Hit> comparator = switch (sortBy) {
+            case "productId" -> Comparator.comparingLong(Hit::productId);
+            case "productName" -> Comparator.comparing(Hit::productName,
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "price" -> Comparator.comparingDouble(Hit::price);
+            case "discount" -> Comparator.comparingDouble(Hit::discount);
+            case "specialPrice" -> Comparator.comparingDouble(Hit::specialPrice);
+            default -> null;
+        };
+        if (comparator == null) {
+            return Comparator.comparingInt(Hit::score).reversed().thenComparingLong(Hit::productId);
+        }
+        comparator = comparator.thenComparingLong(Hit::productId);
+        return sortOrder.equalsIgnoreCase("asc") ? comparator : comparator.reversed();
+    }
+
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String folded = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(folded))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+
+    // Every term the token starts is expanded, so nothing is dropped from the results. A token too short to
+    // narrow the vocabulary down matches whole terms only
+    private Map<Long, Integer> match(String token) {
+        Map<Long, Integer> matches = new HashMap<>();
+        Map<String, Map<Long, Integer>> terms = token.length() < MIN_PREFIX_LENGTH
+                ? postings.subMap(token, true, token, true)
+                : postings.subMap(token, true, token + Character.MAX_VALUE, true);
+        for (Map.Entry<String, Map<Long, Integer>> entry : terms.entrySet()) {
+            int boost = entry.getKey().equals(token) ? EXACT_MATCH_BOOST : 1;
+            entry.getValue().forEach((productId, weight) -> matches.merge(productId, weight * boost, Math::max));
+        }
+        return matches;
+    }
+
+    private void changed(Long productId) {
+        if (changedDuringBuild != null) {
+            changedDuringBuild.add(productId);
+        }
+    }
+
+    private void put(Doc doc) {
+        docs.put(doc.productId(), doc);
+        doc.terms().forEach((term, weight) -> postings
+                .computeIfAbsent(term, key -> new ConcurrentHashMap<>())
+                .put(doc.productId(), weight));
+    }
+
+    private void removeDoc(Long productId) {
+        Doc doc = docs.remove(productId);
+        if (doc == null) {
+            return;
+        }
+        doc.terms().keySet().forEach(term -> {
+            Map<Long, Integer> products = postings.get(term);
+            if (products != null) {
+                products.remove(productId);
+                if (products.isEmpty()) {
+                    postings.remove(term, products);
+                }
+            }
+        });
+    }
+
+    private static Doc toDoc(Product product) {
+        Long categoryId = product.getCategory() != null ? product.getCategory().getCategoryId() : null;
+        return toDoc(product.getProductId(), product.getProductName(), product.getDescription(), categoryId,
+                product.getPrice(), product.getDiscount(), product.getSpecialPrice());
+    }
+
+    private static Doc toDoc(Object[] row) {
+        return toDoc((Long) row[0], (String) row[1], (String) row[2], (Long) row[3],
+                ((Number) row[4]).doubleValue(), ((Number) row[5]).doubleValue(), ((Number) row[6]).doubleValue());
+    }
+
+    private static Doc toDoc(Long productId, String productName, String description, Long categoryId,
+            double price, double discount, double specialPrice) {
+        Map<String, Integer> terms = new HashMap<>();
+        tokenize(productName).forEach(term -> terms.merge(term, NAME_WEIGHT, Integer::sum));
+        tokenize(description).forEach(term -> terms.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+        return new Doc(productId, categoryId, productName, price, discount, specialPrice, terms);
+    }
+}
@@ -2,15 +2,22 @@ package com.maihuuphuoc.example05.service.impl;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -23,12 +30,14 @@ import com.maihuuphuoc.example05.entity.Category;
 import com.maihuuphuoc.example05.entity.Product;
 import com.maihuuphuoc.example05.exceptions.APIException;
 import com.maihuuphuoc.example05.exceptions.ResourceNotFoundException;
-import com.maihuuphuoc.example05.payloads.CartDTO;
+import com.maihuuphuoc.example05.mapper.DTOMapper;
 import com.maihuuphuoc.example05.payloads.ProductDTO;
 import com.maihuuphuoc.example05.payloads.ProductResponse;
+import com.maihuuphuoc.example05.payloads.SuggestionDTO;
 import com.maihuuphuoc.example05.repository.CategoryRepo;
 import com.maihuuphuoc.example05.repository.ProductRepo;
 import com.maihuuphuoc.example05.repository.CartRepo;
+import com.maihuuphuoc.example05.repository.KeysetPager;
 import com.maihuuphuoc.example05.service.CartService;
 import com.maihuuphuoc.example05.service.FileService;
 import com.maihuuphuoc.example05.service.ProductService;
@@ -38,6 +47,10 @@ import jakarta.transaction.Transactional;
 @Transactional
 @Service
 public class ProductServiceImpl implements ProductService {
+    // Scalar columns a client may page by cursor through; the id is always allowed
+    private static final Set<String> CURSOR_SORT_KEYS = Set.of("productName", "quantity", "price", "discount",
+            "specialPrice");
+
     @Autowired
     private ProductRepo productRepo;
     @Autowired
@@ -55,7 +68,34 @@ public class ProductServiceImpl implements ProductService {
     private FileService fileService;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private DTOMapper dtoMapper;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private ProductFacetIndex facetIndex;
+
+    @Autowired
+    private ProductSuggestIndex suggestIndex;
+
+    @Autowired
+    private ProductCooccurrenceIndex cooccurrenceIndex;
+
+    @Autowired
+    private BestSellerLeaderboard bestSellers;
+
+    @Autowired
+    private KeysetPager keysetPager;
+
+    @Autowired
+    private InventoryReservations reservations;
+
+    @Autowired
+    private CartSnapshotCache cartSnapshots;
 
     @Value("${project.image}")
     private String path;
@@ -65,42 +105,46 @@ public class ProductServiceImpl implements ProductService {
         Category category = categoryRepo.findById(categoryId)
                 .orElseThrow(() -> new ResourceNotFoundException("Category", "categoryId", categoryId));
 
-        boolean isProductNotPresent = true;
-
-        List<Product> products = category.getProducts();
-
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getProductName().equals(product.getProductName())
-                    && products.get(i).getDescription().equals(product.getDescription())) {
-                isProductNotPresent = false;
-                break;
-            }
+        // Indexed lookup on the fingerprint; the unique index settles concurrent inserts
+        if (productRepo.existsByFingerprint(
+                Product.fingerprintOf(categoryId, product.getProductName(), product.getDescription()))) {
+            throw new APIException("Product already exists !!!");
         }
 
-        if (isProductNotPresent) {
-            product.setImage("default.png");
-            product.setCategory(category);
-            double specialPrice = product.getPrice() - ((product.getDiscount() * 0.01) * product.getPrice());
-            product.setSpecialPrice(specialPrice);
-            Product savedProduct = productRepo.save(product);
-            return modelMapper.map(savedProduct, ProductDTO.class);
-        } else {
+        product.setImage("default.png");
+        product.setCategory(category);
+        double specialPrice = product.getPrice() - ((product.getDiscount() * 0.01) * product.getPrice());
+        product.setSpecialPrice(specialPrice);
+        Product savedProduct;
+        try {
+            savedProduct = productRepo.saveAndFlush(product);
+        } catch (DataIntegrityViolationException e) {
             throw new APIException("Product already exists !!!");
         }
+        catalogCache.evictProduct(savedProduct.getProductId(), categoryId);
+        searchIndex.index(savedProduct);
+        facetIndex.index(savedProduct);
+        suggestIndex.index(savedProduct);
+        return dtoMapper.toProductDTO(savedProduct);
     }
 
     @Override
     public ProductResponse getPromotionProducts(int pageNumber, int pageSize, String sortBy, String sortOrder) {
+        return catalogCache.getPage(ProductCatalogCache.PageKey.promotion(pageNumber, pageSize, sortBy, sortOrder),
+                key -> loadPromotionProducts(pageNumber, pageSize, sortBy, sortOrder));
+    }
+
+    private ProductResponse loadPromotionProducts(int pageNumber, int pageSize, String sortBy, String sortOrder) {
         Sort sort = sortOrder.equalsIgnoreCase("asc") ? Sort.by(sortBy).ascending()
                 : Sort.by(sortBy).descending();
 
         Pageable pageable = PageRequest.of(pageNumber, pageSize, sort);
 
-        Page<Product> productPage = productRepository.findByDiscountGreaterThan(0, pageable);
+        Page<Product> productPage = productRepository.findCatalogPageByDiscountGreaterThan(0, pageable);
 
         List<ProductDTO> productDTOs = productPage.getContent()
                 .stream()
-                .map(product -> modelMapper.map(product, ProductDTO.class))
+                .map(product -> dtoMapper.toProductDTO(product))
                 .toList();
 
         return new ProductResponse(productDTOs, productPage.getNumber() + 1,
@@ -110,12 +154,17 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public ProductResponse getAllProducts(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder) {
+        return catalogCache.getPage(ProductCatalogCache.PageKey.all(pageNumber, pageSize, sortBy, sortOrder),
+                key -> loadAllProducts(pageNumber, pageSize, sortBy, sortOrder));
+    }
+
+    private ProductResponse loadAllProducts(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder) {
         Sort sortByAndOrder = sortOrder.equalsIgnoreCase("asc") ? Sort.by(sortBy).ascending()
                 : Sort.by(sortBy).descending();
         Pageable pageDetails = PageRequest.of(pageNumber, pageSize, sortByAndOrder);
-        Page<Product> pageProducts = productRepo.findAll(pageDetails);
+        Page<Product> pageProducts = productRepo.findCatalogPage(pageDetails);
         List<Product> products = pageProducts.getContent();
-        List<ProductDTO> productDTOs = products.stream().map(product -> modelMapper.map(product, ProductDTO.class))
+        List<ProductDTO> productDTOs = products.stream().map(product -> dtoMapper.toProductDTO(product))
                 .collect(Collectors.toList());
 
         ProductResponse productResponse = new ProductResponse();
@@ -129,20 +178,59 @@ public class ProductServiceImpl implements ProductService {
         return productResponse;
     }
 
+    @Override
+    public ProductResponse getAllProductsByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+            boolean withCount) {
+        KeysetPager.Slice<Product> slice = keysetPager.fetch(Product.class, "productId", CURSOR_SORT_KEYS, sortBy,
+                sortOrder, cursor, pageSize, "category");
+        List<ProductDTO> productDTOs = slice.content().stream()
+                .map(dtoMapper::toProductDTO)
+                .collect(Collectors.toList());
+
+        ProductResponse productResponse = new ProductResponse();
+        productResponse.setContent(productDTOs);
+        productResponse.setPageSize(pageSize);
+        productResponse.setLastPage(slice.nextCursor() == null);
+        productResponse.setNextCursor(slice.nextCursor());
+        if (withCount) {
+            long totalElements = productRepo.count();
+            productResponse.setTotalElements(totalElements);
+            productResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
+
+        return productResponse;
+    }
+
     @Override
     public ProductDTO getProductById(Long productId) {
+        return catalogCache.getProduct(productId, this::loadProductById);
+    }
+
+    private ProductDTO loadProductById(Long productId) {
         Optional<Product> productOptional = productRepo.findById(productId);
         if (productOptional.isPresent()) {
             Product product = productOptional.get();
-            return modelMapper.map(product, ProductDTO.class);
+            return dtoMapper.toProductDTO(product);
         } else {
             throw new ResourceNotFoundException("Product", "productId", productId);
         }
     }
 
+    @Override
+    public void exportProducts(Long categoryId, Consumer<ProductDTO> sink) {
+        productRepo.forEachCatalogRow(categoryId, row -> sink.accept(dtoMapper.toProductDTO(row)));
+    }
+
     @Override
     public ProductResponse searchByCategory(Long categoryId, Integer pageNumber, Integer pageSize, String sortBy,
             String sortOrder) {
+        return catalogCache.getPage(
+                ProductCatalogCache.PageKey.category(categoryId, pageNumber, pageSize, sortBy, sortOrder),
+                key -> loadByCategory(categoryId, pageNumber, pageSize, sortBy, sortOrder));
+    }
+
+    private ProductResponse loadByCategory(Long categoryId, Integer pageNumber, Integer pageSize, String sortBy,
+            String sortOrder) {
         // Category category = categoryRepo.findById(categoryId)
         // .orElseThrow(() -> new ResourceNotFoundException("Category", "categoryId",
         // categoryId));
@@ -150,7 +238,7 @@ public class ProductServiceImpl implements ProductService {
                 : Sort.by(sortBy).descending();
 
         Pageable pageDetails = PageRequest.of(pageNumber, pageSize, sortByAndOrder);
-        Page<Product> pageProducts = productRepo.findByCategoryCategoryId(categoryId, pageDetails);
+        Page<Product> pageProducts = productRepo.findCatalogPageByCategory(categoryId, pageDetails);
 
         List<Product> products = pageProducts.getContent();
 
@@ -160,7 +248,7 @@ public class ProductServiceImpl implements ProductService {
         // }
 
         List<ProductDTO> productDTOs = products.stream()
-                .map(p -> modelMapper.map(p, ProductDTO.class))
+                .map(p -> dtoMapper.toProductDTO(p))
                 .collect(Collectors.toList());
 
         ProductResponse productResponse = new ProductResponse();
@@ -177,27 +265,115 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public ProductResponse searchProductByKeyword(String keyword, Long categoryId, Integer pageNumber, Integer pageSize,
             String sortBy, String sortOrder) {
-        Sort sortByAndOrder = sortOrder.equalsIgnoreCase("asc") ? Sort.by(sortBy).ascending()
-                : Sort.by(sortBy).descending();
-        Pageable pageDetails = PageRequest.of(pageNumber, pageSize, sortByAndOrder);
-        Page<Product> pageProducts = productRepo.findByProductNameContaining(keyword, pageDetails);
-        List<Product> products = pageProducts.getContent();
+        // Only the hits up to the requested page are ranked; the others are just counted
+        int limit = (int) Math.min((long) (pageNumber + 1) * pageSize, Integer.MAX_VALUE);
+        ProductSearchIndex.Matches matches = searchIndex.search(keyword, categoryId,
+                ProductSearchIndex.ordering(sortBy, sortOrder), limit);
+        List<ProductSearchIndex.Hit> hits = matches.hits();
 
-        if (products.isEmpty()) {
+        if (matches.total() == 0) {
             throw new APIException("Products not found with keyword: " + keyword);
         }
 
-        List<ProductDTO> productDTOs = products.stream()
-                .map(product -> modelMapper.map(product, ProductDTO.class))
+        int fromIndex = (int) Math.min((long) pageNumber * pageSize, hits.size());
+        int toIndex = Math.min(fromIndex + pageSize, hits.size());
+        List<Long> pageIds = hits.subList(fromIndex, toIndex).stream()
+                .map(ProductSearchIndex.Hit::productId)
                 .collect(Collectors.toList());
 
+        Map<Long, Product> productsById = productRepo.findAllById(pageIds).stream()
+                .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+
+        List<ProductDTO> productDTOs = pageIds.stream()
+                .map(productsById::get)
+                .filter(Objects::nonNull)
+                .map(product -> dtoMapper.toProductDTO(product))
+                .collect(Collectors.toList());
+
+        int totalPages = (matches.total() + pageSize - 1) / pageSize;
+
         ProductResponse productResponse = new ProductResponse();
         productResponse.setContent(productDTOs);
-        productResponse.setPageNumber(pageProducts.getNumber());
-        productResponse.setPageSize(pageProducts.getSize());
-        productResponse.setTotalElements(pageProducts.getTotalElements());
-        productResponse.setTotalPages(pageProducts.getTotalPages());
-        productResponse.setLastPage(pageProducts.isLast());
+        productResponse.setPageNumber(pageNumber);
+        productResponse.setPageSize(pageSize);
+        productResponse.setTotalElements((long) matches.total());
+        productResponse.setTotalPages(totalPages);
+        productResponse.setLastPage(pageNumber >= totalPages - 1);
+
+        return productResponse;
+    }
+
+    // Served from memory on every keystroke, so no transaction is opened
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public List<SuggestionDTO> suggest(String query, int limit) {
+        return suggestIndex.suggest(query, limit).stream()
+                .map(suggestion -> new SuggestionDTO(suggestion.type(), suggestion.id(), suggestion.text()))
+                .toList();
+    }
+
+    // Both the neighbour ids and the product DTOs normally come from memory
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public List<ProductDTO> getRelatedProducts(Long productId, int limit) {
+        getProductById(productId);
+        List<ProductDTO> related = new ArrayList<>();
+        for (long relatedId : cooccurrenceIndex.related(productId, limit)) {
+            try {
+                related.add(getProductById(relatedId));
+            } catch (ResourceNotFoundException e) {
+                // Deleted after the order was counted
+            }
+        }
+        return related;
+    }
+
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public ProductResponse getBestSellers(Long categoryId, boolean recent, Integer pageNumber, Integer pageSize) {
+        BestSellerLeaderboard.Page page = bestSellers.query(categoryId, recent, pageNumber * pageSize, pageSize);
+
+        List<ProductDTO> productDTOs = new ArrayList<>();
+        for (Long productId : page.productIds()) {
+            try {
+                productDTOs.add(getProductById(productId));
+            } catch (ResourceNotFoundException e) {
+                // Deleted after it was ranked
+            }
+        }
+
+        int totalPages = (int) ((page.total() + pageSize - 1) / pageSize);
+        // 0-based like every other product listing
+        return new ProductResponse(productDTOs, pageNumber, pageSize, page.total(), totalPages,
+                pageNumber >= totalPages - 1);
+    }
+
+    @Override
+    public ProductResponse filterProducts(List<Long> categoryIds, Double minPrice, Double maxPrice,
+            Double minDiscount, Boolean inStock, Integer pageNumber, Integer pageSize) {
+        ProductFacetIndex.Filter filter = new ProductFacetIndex.Filter(
+                categoryIds != null ? new HashSet<>(categoryIds) : null, minPrice, maxPrice, minDiscount, inStock);
+        ProductFacetIndex.Result result = facetIndex.query(filter, pageNumber * pageSize, pageSize);
+
+        Map<Long, Product> productsById = productRepo.findAllWithCategoryByIdIn(result.productIds()).stream()
+                .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+
+        List<ProductDTO> productDTOs = result.productIds().stream()
+                .map(productsById::get)
+                .filter(Objects::nonNull)
+                .map(product -> dtoMapper.toProductDTO(product))
+                .collect(Collectors.toList());
+
+        int totalPages = (int) ((result.total() + pageSize - 1) / pageSize);
+
+        ProductResponse productResponse = new ProductResponse();
+        productResponse.setContent(productDTOs);
+        productResponse.setPageNumber(pageNumber);
+        productResponse.setPageSize(pageSize);
+        productResponse.setTotalElements(result.total());
+        productResponse.setTotalPages(totalPages);
+        productResponse.setLastPage(pageNumber >= totalPages - 1);
+        productResponse.setFacets(result.facets());
 
         return productResponse;
     }
@@ -211,30 +387,41 @@ public class ProductServiceImpl implements ProductService {
             throw new APIException("Product not found with productId: " + productId);
         }
 
+        Long categoryId = productFromDB.getCategory() != null ? productFromDB.getCategory().getCategoryId() : null;
+        String fingerprint = Product.fingerprintOf(categoryId, product.getProductName(), product.getDescription());
+        // Only a new name or description can collide; a legacy duplicate may still change its price or stock
+        boolean renamed = !fingerprint.equals(Product.fingerprintOf(categoryId, productFromDB.getProductName(),
+                productFromDB.getDescription()));
+        if (renamed && productRepo.existsByFingerprintAndProductIdNot(fingerprint, productId)) {
+            throw new APIException("Product already exists !!!");
+        }
+
         product.setImage(productFromDB.getImage());
         product.setProductId(productId);
         product.setCategory(productFromDB.getCategory());
+        product.setFingerprint(productFromDB.getFingerprint());
 
         double specialPrice = product.getPrice() - ((product.getDiscount() * 0.01) * product.getPrice());
         product.setSpecialPrice(specialPrice);
 
-        Product savedProduct = productRepo.save(product);
-
-        List<Cart> carts = cartRepo.findCartsByProductId(productId);
-
-        List<CartDTO> cartDTOs = carts.stream().map(cart -> {
-            CartDTO cartDTO = modelMapper.map(cart, CartDTO.class);
-            List<ProductDTO> products = cart.getCartItems().stream()
-                    .map(p -> modelMapper.map(p.getProduct(), ProductDTO.class)).collect(Collectors.toList());
-
-            cartDTO.setProducts(products);
-
-            return cartDTO;
-        }).collect(Collectors.toList());
-
-        cartDTOs.forEach(cart -> cartService.updateProductInCarts(cart.getCartId(), productId));
-
-        return modelMapper.map(savedProduct, ProductDTO.class);
+        Product savedProduct;
+        try {
+            savedProduct = productRepo.saveAndFlush(product);
+        } catch (DataIntegrityViolationException e) {
+            throw new APIException("Product already exists !!!");
+        }
+        catalogCache.evictProduct(productId, savedProduct.getCategory() != null
+                ? savedProduct.getCategory().getCategoryId()
+                : null);
+        searchIndex.index(savedProduct);
+        facetIndex.index(savedProduct);
+        suggestIndex.index(savedProduct);
+        reservations.invalidate(productId);
+
+        // Two bulk statements, however many carts hold the product
+        cartService.repriceProductInCarts(productId, savedProduct.getSpecialPrice());
+
+        return dtoMapper.toProductDTO(savedProduct);
     }
 
     @Override
@@ -247,12 +434,18 @@ public class ProductServiceImpl implements ProductService {
         }
 
         String fileName = fileService.uploadImage(path, image);
+        fileService.retainImage(fileName);
+        fileService.releaseImage(productFromDB.getImage());
 
         productFromDB.setImage(fileName);
 
         Product updatedProduct = productRepo.save(productFromDB);
+        catalogCache.evictProduct(productId, updatedProduct.getCategory() != null
+                ? updatedProduct.getCategory().getCategoryId()
+                : null);
+        cartSnapshots.evictProduct(productId);
 
-        return modelMapper.map(updatedProduct, ProductDTO.class);
+        return dtoMapper.toProductDTO(updatedProduct);
     }
 
     @Override
@@ -265,13 +458,23 @@ public class ProductServiceImpl implements ProductService {
         carts.forEach(cart -> cartService.deleteProductFromCart(cart.getCartId(), productId));
 
         productRepo.delete(product);
+        fileService.releaseImage(product.getImage());
+        reservations.invalidate(productId);
+        searchIndex.remove(productId);
+        facetIndex.remove(productId);
+        suggestIndex.remove(productId);
+        cooccurrenceIndex.remove(productId);
+        bestSellers.remove(productId);
+        catalogCache.evictProduct(productId, product.getCategory() != null
+                ? product.getCategory().getCategoryId()
+                : null);
 
         return "Product with productId: " + productId + " deleted successfully !!!";
     }
 
     @Override
-    public InputStream getProductImage(String fileName) throws FileNotFoundException {
-        return fileService.getResource(path, fileName);
+    public Path getProductImage(String fileName, String size) throws FileNotFoundException {
+        return fileService.getImagePath(path, fileName, size);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.maihuuphuoc.example05.config.TransactionHooks;
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.OrderItemRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+/**
+ * Prefix trie of product and category names for the search box. Names are
+ * folded like {@link ProductSearchIndex#tokenize} and inserted once per word,
+ * so "thoai" completes "Điện thoại Samsung". Every node keeps the best
+ * {@code product.suggest.max-results} completions of its subtree, so a lookup
+ * only walks the typed prefix. Products are weighted by units sold, categories
+ * by their number of products. Reads take no lock; writes are serialized and
+ * refresh only the nodes on the changed paths.
+ */
+@Component
+public class ProductSuggestIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ProductSuggestIndex.class);
+
+    private static final int BUILD_BATCH_SIZE = 5000;
+    private static final int MAX_KEY_LENGTH = 40;
+
+    public static final String PRODUCT = "product";
+    public static final String CATEGORY = "category";
+
+    public record Suggestion(String type, Long id, String text, long weight) {
+
+        String key() {
+            return type + ":" + id;
+        }
+    }
+
+    private static final Comparator<Suggestion> RANKING = Comparator.comparingLong(Suggestion::weight).reversed()
+            .thenComparingInt(suggestion -> suggestion.text().length())
+            .thenComparing(Suggestion::text);
+
+    private static final class Node {
+        private final Map<Character, Node> children = new ConcurrentHashMap<>();
+        // Suggestions whose folded name, or one of its word suffixes, ends here
+        private final Map<String, Suggestion> terminals = new HashMap<>();
+        private volatile List<Suggestion> top = List.of();
+    }
+
+    @Value("${product.suggest.max-results:10}")
+    private int maxResults;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private CategoryRepo categoryRepo;
+
+    @Autowired
+    private OrderItemRepo orderItemRepo;
+
+    private final Node root = new Node();
+
+    // Guarded by this
+    private final Map<String, Suggestion> suggestions = new HashMap<>();
+    private final Map<Long, Long> unitsSold = new HashMap<>();
+    private final Map<Long, Long> productCategory = new HashMap<>();
+    private final Map<Long, Long> categoryProducts = new HashMap<>();
+    private final Map<Long, String> categoryNames = new HashMap<>();
+
+    // Products changed by a commit while the index is being built; guarded by this, null otherwise
+    private Set<Long> changedDuringBuild;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Category> categories = categoryRepo.findAll();
+        List<Object[]> sales = orderItemRepo.sumQuantitiesByProduct();
+        synchronized (this) {
+            categories.forEach(category -> categoryNames.put(category.getCategoryId(), category.getCategoryName()));
+            sales.forEach(row -> unitsSold.put((Long) row[0], ((Number) row[1]).longValue()));
+            changedDuringBuild = new HashSet<>();
+        }
+        try {
+            long lastProductId = 0L;
+            List<Object[]> rows;
+            do {
+                rows = productRepo.findIndexRowsAfter(lastProductId, PageRequest.of(0, BUILD_BATCH_SIZE));
+                synchronized (this) {
+                    for (Object[] row : rows) {
+                        lastProductId = (Long) row[0];
+                        Long productId = lastProductId;
+                        // A row read before a commit must not bring back what that commit renamed or removed
+                        if (changedDuringBuild.contains(productId)) {
+                            continue;
+                        }
+                        put(new Suggestion(PRODUCT, productId, (String) row[1],
+                                1 + unitsSold.getOrDefault(productId, 0L)));
+                        if (row[3] != null) {
+                            productCategory.put(productId, (Long) row[3]);
+                            categoryProducts.merge((Long) row[3], 1L, Long::sum);
+                        }
+                    }
+                }
+            } while (rows.size() == BUILD_BATCH_SIZE);
+        } finally {
+            synchronized (this) {
+                changedDuringBuild = null;
+            }
+        }
+        synchronized (this) {
+            categoryNames.keySet().forEach(this::putCategory);
+        }
+        logger.info("Product suggest index built: {} suggestions in {} ms", suggestions.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /** Returns the best completions of the typed prefix; an empty list when nothing matches. */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = String.join(" ", ProductSearchIndex.tokenize(prefix));
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        Node node = root;
+        for (int i = 0; i < Math.min(key.length(), MAX_KEY_LENGTH) && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null) {
+            return List.of();
+        }
+        List<Suggestion> top = node.top;
+        return top.size() <= limit ? top : top.subList(0, Math.max(limit, 0));
+    }
+
+    /**
+     * (Re)indexes the product once the current transaction commits.
+     */
+    public void index(Product product) {
+        Long productId = product.getProductId();
+        String productName = product.getProductName();
+        Long categoryId = product.getCategory() != null ? product.getCategory().getCategoryId() : null;
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                changed(productId);
+                putProduct(productId, productName, categoryId);
+            }
+        });
+    }
+
+    public void remove(Long productId) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                changed(productId);
+                removeSuggestion(PRODUCT + ":" + productId);
+                unitsSold.remove(productId);
+                moveProduct(productId, null);
+            }
+        });
+    }
+
+    public void indexCategory(Category category) {
+        Long categoryId = category.getCategoryId();
+        String categoryName = category.getCategoryName();
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                categoryNames.put(categoryId, categoryName);
+                putCategory(categoryId);
+            }
+        });
+    }
+
+    public void removeCategory(Long categoryId) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                categoryNames.remove(categoryId);
+                categoryProducts.remove(categoryId);
+                removeSuggestion(CATEGORY + ":" + categoryId);
+            }
+        });
+    }
+
+    /** Adds sold units to the products' weights once the order commits. */
+    public void recordSales(Map<Long, Integer> quantities) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                quantities.forEach((productId, quantity) -> {
+                    unitsSold.merge(productId, (long) quantity, Long::sum);
+                    Suggestion current = suggestions.get(PRODUCT + ":" + productId);
+                    if (current != null) {
+                        put(new Suggestion(PRODUCT, productId, current.text(), 1 + unitsSold.get(productId)));
+                    }
+                });
+            }
+        });
+    }
+
+    private void changed(Long productId) {
+        if (changedDuringBuild != null) {
+            changedDuringBuild.add(productId);
+        }
+    }
+
+    private void putProduct(Long productId, String productName, Long categoryId) {
+        put(new Suggestion(PRODUCT, productId, productName, 1 + unitsSold.getOrDefault(productId, 0L)));
+        moveProduct(productId, categoryId);
+    }
+
+    // Keeps the category weights in step with where the product now lives
+    private void moveProduct(Long productId, Long categoryId) {
+        Long previous = categoryId != null ? productCategory.put(productId, categoryId)
+                : productCategory.remove(productId);
+        if (previous != null && previous.equals(categoryId)) {
+            return;
+        }
+        if (previous != null) {
+            categoryProducts.merge(previous, -1L, Long::sum);
+            putCategory(previous);
+        }
+        if (categoryId != null) {
+            categoryProducts.merge(categoryId, 1L, Long::sum);
+            putCategory(categoryId);
+        }
+    }
+
+    private void putCategory(Long categoryId) {
+        String categoryName = categoryNames.get(categoryId);
+        if (categoryName != null) {
+            put(new Suggestion(CATEGORY, categoryId, categoryName, categoryProducts.getOrDefault(categoryId, 0L)));
+        }
+    }
+
+    private void put(Suggestion suggestion) {
+        removeSuggestion(suggestion.key());
+        Set<String> keys = keysOf(suggestion.text());
+        if (keys.isEmpty()) {
+            return;
+        }
+        suggestions.put(suggestion.key(), suggestion);
+        for (String key : keys) {
+            List<Node> path = new ArrayList<>(key.length() + 1);
+            Node node = root;
+            path.add(node);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+                path.add(node);
+            }
+            node.terminals.put(suggestion.key(), suggestion);
+            refresh(path, key);
+        }
+    }
+
+    private void removeSuggestion(String suggestionKey) {
+        Suggestion suggestion = suggestions.remove(suggestionKey);
+        if (suggestion == null) {
+            return;
+        }
+        for (String key : keysOf(suggestion.text())) {
+            List<Node> path = new ArrayList<>(key.length() + 1);
+            Node node = root;
+            path.add(node);
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+                if (node != null) {
+                    path.add(node);
+                }
+            }
+            if (node != null) {
+                node.terminals.remove(suggestionKey);
+            }
+            refresh(path, key);
+        }
+    }
+
+    /** Recomputes the best completions bottom-up along the path, dropping nodes left empty. */
+    private void refresh(List<Node> path, String key) {
+        for (int depth = path.size() - 1; depth >= 0; depth--) {
+            Node node = path.get(depth);
+            Map<String, Suggestion> candidates = new HashMap<>(node.terminals);
+            for (Node child : node.children.values()) {
+                child.top.forEach(suggestion -> candidates.putIfAbsent(suggestion.key(), suggestion));
+            }
+            node.top = candidates.values().stream()
+                    .sorted(RANKING)
+                    .limit(maxResults)
+                    .toList();
+            if (depth > 0 && node.top.isEmpty() && node.children.isEmpty()) {
+                path.get(depth - 1).children.remove(key.charAt(depth - 1), node);
+            }
+        }
+    }
+
+    // The folded name from each word on, so a prefix of any word matches
+    private static Set<String> keysOf(String text) {
+        List<String> tokens = ProductSearchIndex.tokenize(text);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String key = String.join(" ", tokens.subList(i, tokens.size()));
+            keys.add(key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+        }
+        return keys;
+    }
+}
@@ -2,6 +2,7 @@ package com.maihuuphuoc.example05.service.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.modelmapper.ModelMapper;
@@ -21,14 +22,17 @@ import com.maihuuphuoc.example05.entity.Role;
 import com.maihuuphuoc.example05.entity.User;
 import com.maihuuphuoc.example05.exceptions.APIException;
 import com.maihuuphuoc.example05.exceptions.ResourceNotFoundException;
+import com.maihuuphuoc.example05.mapper.DTOMapper;
 import com.maihuuphuoc.example05.payloads.AddressDTO;
 import com.maihuuphuoc.example05.payloads.CartDTO;
 import com.maihuuphuoc.example05.payloads.ProductDTO;
 import com.maihuuphuoc.example05.payloads.UserDTO;
 import com.maihuuphuoc.example05.payloads.UserResponse;
 import com.maihuuphuoc.example05.repository.AddressRepo;
+import com.maihuuphuoc.example05.repository.KeysetPager;
 import com.maihuuphuoc.example05.repository.RoleRepo;
 import com.maihuuphuoc.example05.repository.UserRepo;
+import com.maihuuphuoc.example05.security.TokenCache;
 import com.maihuuphuoc.example05.service.CartService;
 import com.maihuuphuoc.example05.service.UserService;
 
@@ -37,6 +41,10 @@ import jakarta.transaction.Transactional;
 @Transactional
 @Service
 public class UserServiceImpl implements UserService {
+    // Scalar columns a client may page by cursor through; the id is always allowed
+    private static final Set<String> CURSOR_SORT_KEYS = Set.of("firstName", "lastName", "mobileNumber",
+            "email");
+
 
     @Autowired
     private UserRepo userRepo;
@@ -56,6 +64,18 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private ModelMapper modelMapper;
 
+    @Autowired
+    private DTOMapper dtoMapper;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private KeysetPager keysetPager;
+
+    @Autowired
+    private CartSnapshotCache cartSnapshots;
+
     @Override
     public UserDTO registerUser(UserDTO userDTO) {
         try {
@@ -95,8 +115,8 @@ public class UserServiceImpl implements UserService {
             cart.setUser(registeredUser);
 
             // Map back to UserDTO
-            userDTO = modelMapper.map(registeredUser, UserDTO.class);
-            userDTO.setAddress(modelMapper.map(address, AddressDTO.class));
+            userDTO = dtoMapper.toUserDTO(registeredUser);
+            userDTO.setAddress(dtoMapper.toAddressDTO(address));
 
             return userDTO;
 
@@ -110,19 +130,19 @@ public class UserServiceImpl implements UserService {
         User user = userRepo.findByEmail(email)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "email", email));
 
-        UserDTO userDTO = modelMapper.map(user, UserDTO.class);
+        UserDTO userDTO = dtoMapper.toUserDTO(user);
 
         // Map Address
         if (user.getAddresses() != null && !user.getAddresses().isEmpty()) {
-            userDTO.setAddress(modelMapper.map(user.getAddresses().get(0), AddressDTO.class));
+            userDTO.setAddress(dtoMapper.toAddressDTO(user.getAddresses().get(0)));
         }
 
         // Map Cart and Cart Items
         if (user.getCart() != null) {
-            CartDTO cartDTO = modelMapper.map(user.getCart(), CartDTO.class);
+            CartDTO cartDTO = dtoMapper.toCartDTO(user.getCart());
 
             List<ProductDTO> products = user.getCart().getCartItems().stream()
-                    .map(item -> modelMapper.map(item.getProduct(), ProductDTO.class))
+                    .map(item -> dtoMapper.toProductDTO(item.getProduct()))
                     .collect(Collectors.toList());
 
             cartDTO.setProducts(products);
@@ -139,19 +159,19 @@ public class UserServiceImpl implements UserService {
                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
 
         // Map User entity to UserDTO
-        UserDTO userDTO = modelMapper.map(user, UserDTO.class);
+        UserDTO userDTO = dtoMapper.toUserDTO(user);
 
         // Map Address if present
         if (user.getAddresses() != null && !user.getAddresses().isEmpty()) {
-            userDTO.setAddress(modelMapper.map(user.getAddresses().get(0), AddressDTO.class));
+            userDTO.setAddress(dtoMapper.toAddressDTO(user.getAddresses().get(0)));
         }
 
         // Map Cart and Cart Items if present
         if (user.getCart() != null) {
-            CartDTO cartDTO = modelMapper.map(user.getCart(), CartDTO.class);
+            CartDTO cartDTO = dtoMapper.toCartDTO(user.getCart());
 
             List<ProductDTO> products = user.getCart().getCartItems().stream()
-                    .map(item -> modelMapper.map(item.getProduct(), ProductDTO.class))
+                    .map(item -> dtoMapper.toProductDTO(item.getProduct()))
                     .collect(Collectors.toList());
 
             cartDTO.setProducts(products);
@@ -170,6 +190,11 @@ public class UserServiceImpl implements UserService {
                     .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
             System.out.println(
                     "=== [LOG] User entity trước khi cập nhật: id=" + user.getUserId() + ", email=" + user.getEmail());
+            // Email, password and roles are all part of the cached principal
+            tokenCache.evictUser(user.getEmail());
+            if (user.getCart() != null) {
+                cartSnapshots.evict(user.getCart().getCartId());
+            }
             if (userDTO.getEmail() != null) {
                 user.setEmail(userDTO.getEmail());
             }
@@ -207,17 +232,17 @@ public class UserServiceImpl implements UserService {
 
             User updatedUser = userRepo.save(user);
 
-            UserDTO updatedUserDTO = modelMapper.map(updatedUser, UserDTO.class);
+            UserDTO updatedUserDTO = dtoMapper.toUserDTO(updatedUser);
 
             if (updatedUser.getAddresses() != null && !updatedUser.getAddresses().isEmpty()) {
-                updatedUserDTO.setAddress(modelMapper.map(updatedUser.getAddresses().get(0), AddressDTO.class));
+                updatedUserDTO.setAddress(dtoMapper.toAddressDTO(updatedUser.getAddresses().get(0)));
             }
 
             if (updatedUser.getCart() != null) {
-                CartDTO cartDTO = modelMapper.map(updatedUser.getCart(), CartDTO.class);
+                CartDTO cartDTO = dtoMapper.toCartDTO(updatedUser.getCart());
 
                 List<ProductDTO> products = updatedUser.getCart().getCartItems().stream()
-                        .map(item -> modelMapper.map(item.getProduct(), ProductDTO.class))
+                        .map(item -> dtoMapper.toProductDTO(item.getProduct()))
                         .collect(Collectors.toList());
 
                 cartDTO.setProducts(products);
@@ -241,6 +266,10 @@ public class UserServiceImpl implements UserService {
                     .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
             // Delete user
             userRepo.delete(user);
+            tokenCache.evictUser(user.getEmail());
+            if (user.getCart() != null) {
+                cartSnapshots.evict(user.getCart().getCartId());
+            }
             return "User with id " + userId + " deleted successfully";
 
         } catch (Exception e) {
@@ -260,21 +289,7 @@ public class UserServiceImpl implements UserService {
 
             // Convert page of users to DTOs
             List<UserDTO> userDTOs = userPage.getContent().stream()
-                    .map(user -> {
-                        UserDTO dto = modelMapper.map(user, UserDTO.class);
-                        if (user.getAddresses() != null && !user.getAddresses().isEmpty()) {
-                            dto.setAddress(modelMapper.map(user.getAddresses().get(0), AddressDTO.class));
-                        }
-                        if (user.getCart() != null) {
-                            CartDTO cartDTO = modelMapper.map(user.getCart(), CartDTO.class);
-                            List<ProductDTO> products = user.getCart().getCartItems().stream()
-                                    .map(item -> modelMapper.map(item.getProduct(), ProductDTO.class))
-                                    .collect(Collectors.toList());
-                            cartDTO.setProducts(products);
-                            dto.setCart(cartDTO);
-                        }
-                        return dto;
-                    })
+                    .map(this::toListedUserDTO)
                     .collect(Collectors.toList());
 
             // Return paginated user data
@@ -285,4 +300,49 @@ public class UserServiceImpl implements UserService {
             throw new APIException("Error retrieving users");
         }
     }
+
+    @Override
+    public UserResponse getAllUsersByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+            boolean withCount) {
+        KeysetPager.Slice<User> slice;
+        try {
+            slice = keysetPager.fetch(User.class, "userId", CURSOR_SORT_KEYS, sortBy, sortOrder, cursor, pageSize);
+        } catch (APIException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new APIException("Error retrieving users");
+        }
+
+        List<UserDTO> userDTOs = slice.content().stream()
+                .map(this::toListedUserDTO)
+                .collect(Collectors.toList());
+
+        UserResponse userResponse = new UserResponse();
+        userResponse.setContent(userDTOs);
+        userResponse.setPageSize(pageSize);
+        userResponse.setLastPage(slice.nextCursor() == null);
+        userResponse.setNextCursor(slice.nextCursor());
+        if (withCount) {
+            long totalElements = userRepo.count();
+            userResponse.setTotalElements(totalElements);
+            userResponse.setTotalPages((int) ((totalElements + pageSize - 1) / pageSize));
+        }
+        return userResponse;
+    }
+
+    private UserDTO toListedUserDTO(User user) {
+        UserDTO dto = dtoMapper.toUserDTO(user);
+        if (user.getAddresses() != null && !user.getAddresses().isEmpty()) {
+            dto.setAddress(dtoMapper.toAddressDTO(user.getAddresses().get(0)));
+        }
+        if (user.getCart() != null) {
+            CartDTO cartDTO = dtoMapper.toCartDTO(user.getCart());
+            List<ProductDTO> products = user.getCart().getCartItems().stream()
+                    .map(item -> dtoMapper.toProductDTO(item.getProduct()))
+                    .collect(Collectors.toList());
+            cartDTO.setProducts(products);
+            dto.setCart(cartDTO);
+        }
+        return dto;
+    }
 }
@@ -0,0 +1,110 @@
+package com.maihuuphuoc.example05.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.payloads.ProductDTO;
+import com.maihuuphuoc.example05.payloads.ProductResponse;
+
+/**
+ * Time and allocation of mapping a 100-item ProductResponse page with
+ * DTOMapper and with ModelMapper. Run with {@code mvn test -Pbenchmark}.
+ */
+class DTOMapperBenchmark {
+	private static final Logger logger = LoggerFactory.getLogger(DTOMapperBenchmark.class);
+
+	private static final int PAGE_SIZE = 100;
+	private static final int WARMUP = 2_000;
+	private static final int ITERATIONS = 2_000;
+
+	private final ModelMapper modelMapper = new ModelMapper();
+
+	private final DTOMapper dtoMapper = new DTOMapper();
+
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private static List<Product> page() {
+		Category category = new Category();
+		category.setCategoryId(1L);
+		category.setCategoryName("Phones");
+		List<Product> products = new ArrayList<>(PAGE_SIZE);
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			Product product = new Product();
+			product.setProductId((long) i);
+			product.setProductName("Phone " + i);
+			product.setDescription("Smart phone number " + i);
+			product.setImage(i + ".png");
+			product.setQuantity(i);
+			product.setPrice(100.0 + i);
+			product.setDiscount(i % 50 + 0.5);
+			product.setSpecialPrice(90.0 + i);
+			product.setCategory(category);
+			products.add(product);
+		}
+		return products;
+	}
+
+	private static ProductResponse response(List<Product> products, Function<Product, ProductDTO> mapper) {
+		List<ProductDTO> content = new ArrayList<>(products.size());
+		for (Product product : products) {
+			content.add(mapper.apply(product));
+		}
+		return new ProductResponse(content, 0, PAGE_SIZE, (long) PAGE_SIZE, 1, true);
+	}
+
+	@Test
+	void dtoMapperOutrunsModelMapper() {
+		List<Product> products = page();
+		Function<Product, ProductDTO> reflective = product -> modelMapper.map(product, ProductDTO.class);
+		assertEquals(response(products, reflective), response(products, dtoMapper::toProductDTO));
+
+		// Alternating rounds so both warm up under the same conditions
+		for (int i = 0; i < WARMUP; i++) {
+			response(products, reflective);
+			response(products, dtoMapper::toProductDTO);
+		}
+		long[] modelMapperTimes = new long[ITERATIONS];
+		long[] dtoMapperTimes = new long[ITERATIONS];
+		long modelMapperBytes = 0;
+		long dtoMapperBytes = 0;
+		long thread = Thread.currentThread().getId();
+		for (int i = 0; i < ITERATIONS; i++) {
+			long allocated = threads.getThreadAllocatedBytes(thread);
+			long began = System.nanoTime();
+			response(products, reflective);
+			modelMapperTimes[i] = System.nanoTime() - began;
+			modelMapperBytes += threads.getThreadAllocatedBytes(thread) - allocated;
+
+			allocated = threads.getThreadAllocatedBytes(thread);
+			began = System.nanoTime();
+			response(products, dtoMapper::toProductDTO);
+			dtoMapperTimes[i] = System.nanoTime() - began;
+			dtoMapperBytes += threads.getThreadAllocatedBytes(thread) - allocated;
+		}
+		Arrays.sort(modelMapperTimes);
+		Arrays.sort(dtoMapperTimes);
+		long modelMapperMedian = modelMapperTimes[ITERATIONS / 2];
+		long dtoMapperMedian = dtoMapperTimes[ITERATIONS / 2];
+
+		logger.info("{}-item ProductResponse page: ModelMapper {} us median, {} bytes; DTOMapper {} us median, "
+				+ "{} bytes", PAGE_SIZE, modelMapperMedian / 1000, modelMapperBytes / ITERATIONS,
+				dtoMapperMedian / 1000, dtoMapperBytes / ITERATIONS);
+		assertTrue(dtoMapperMedian < modelMapperMedian,
+				"DTOMapper took " + dtoMapperMedian + " ns, ModelMapper " + modelMapperMedian + " ns");
+		assertTrue(dtoMapperBytes < modelMapperBytes);
+	}
+}
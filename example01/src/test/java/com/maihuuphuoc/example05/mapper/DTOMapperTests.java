@@ -0,0 +1,113 @@
+package com.maihuuphuoc.example05.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import com.maihuuphuoc.example05.entity.Address;
+import com.maihuuphuoc.example05.entity.Cart;
+import com.maihuuphuoc.example05.entity.CartItem;
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Order;
+import com.maihuuphuoc.example05.entity.OrderItem;
+import com.maihuuphuoc.example05.entity.Payment;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.entity.Role;
+import com.maihuuphuoc.example05.entity.User;
+import com.maihuuphuoc.example05.payloads.AddressDTO;
+import com.maihuuphuoc.example05.payloads.CartDTO;
+import com.maihuuphuoc.example05.payloads.OrderDTO;
+import com.maihuuphuoc.example05.payloads.ProductDTO;
+import com.maihuuphuoc.example05.payloads.UserDTO;
+
+class DTOMapperTests {
+
+	private final ModelMapper modelMapper = new ModelMapper();
+
+	private final DTOMapper dtoMapper = new DTOMapper();
+
+	private Product product() {
+		Category category = new Category();
+		category.setCategoryId(1L);
+		category.setCategoryName("Phones");
+
+		Product product = new Product();
+		product.setProductId(5L);
+		product.setProductName("Phone");
+		product.setDescription("Smart phone");
+		product.setImage("a.png");
+		product.setQuantity(7);
+		product.setPrice(100.0);
+		product.setDiscount(12.7);
+		product.setSpecialPrice(87.3);
+		product.setCategory(category);
+		return product;
+	}
+
+	@Test
+	void productMatchesModelMapper() {
+		assertEquals(modelMapper.map(product(), ProductDTO.class), dtoMapper.toProductDTO(product()));
+
+		Product empty = new Product();
+		empty.setProductId(6L);
+		assertEquals(modelMapper.map(empty, ProductDTO.class), dtoMapper.toProductDTO(empty));
+	}
+
+	@Test
+	void cartAndUserMatchModelMapper() {
+		User user = new User();
+		user.setUserId(3L);
+		user.setEmail("alice@example.com");
+		user.setFirstName("Alice");
+		user.setPassword("secret");
+		user.getRoles().add(new Role(102L, "USER"));
+		user.getAddresses().add(new Address("Vietnam", "HN", "Hanoi", "100000", "Main street", "Tower"));
+
+		Cart cart = new Cart();
+		cart.setCartId(9L);
+		cart.setTotalPrice(174.6);
+		cart.setUser(user);
+		user.setCart(cart);
+
+		CartItem cartItem = new CartItem();
+		cartItem.setCart(cart);
+		cartItem.setProduct(product());
+		cartItem.setQuantity(2);
+		cart.getCartItems().add(cartItem);
+
+		assertEquals(modelMapper.map(cart, CartDTO.class), dtoMapper.toCartDTO(cart));
+		assertEquals(modelMapper.map(user, UserDTO.class), dtoMapper.toUserDTO(user));
+		assertEquals(modelMapper.map(user.getAddresses().get(0), AddressDTO.class),
+				dtoMapper.toAddressDTO(user.getAddresses().get(0)));
+	}
+
+	@Test
+	void orderMatchesModelMapper() {
+		Order order = new Order();
+		order.setOrderId(11L);
+		order.setEmail("alice@example.com");
+		order.setOrderDate(LocalDate.of(2024, 1, 2));
+		order.setTotalAmount(261.9);
+		order.setOrderStatus("Order Accepted!");
+
+		Payment payment = new Payment();
+		payment.setPaymentId(2L);
+		payment.setPaymentMethod("card");
+		payment.setOrder(order);
+		order.setPayment(payment);
+
+		OrderItem orderItem = new OrderItem();
+		orderItem.setOrderItemId(21L);
+		orderItem.setOrder(order);
+		orderItem.setProduct(product());
+		orderItem.setQuantity(3);
+		orderItem.setDiscount(12.7);
+		orderItem.setOrderedProductPrice(87.3);
+		order.getOrderItems().add(orderItem);
+
+		assertEquals(modelMapper.map(order, OrderDTO.class), dtoMapper.toOrderDTO(order));
+	}
+}
@@ -0,0 +1,152 @@
+package com.maihuuphuoc.example05.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.exceptions.APIException;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class KeysetPagerTests {
+
+	private static final Set<String> SORT_KEYS = Set.of("productName", "price");
+
+	@Autowired
+	private KeysetPager keysetPager;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final List<Product> saved = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		Category category = new Category();
+		category.setCategoryName("Keyset paging " + System.nanoTime());
+		category = categoryRepo.save(category);
+		// Three prices shared by several products, so pages have to break ties by id
+		for (int i = 0; i < 7; i++) {
+			Product product = new Product();
+			product.setProductName("Keyset " + category.getCategoryId() + " " + i);
+			product.setDescription("Paged through");
+			product.setCategory(category);
+			product.setQuantity(1);
+			product.setPrice(10 * (i % 3));
+			product.setSpecialPrice(10 * (i % 3));
+			saved.add(productRepo.save(product));
+		}
+	}
+
+	// Other tests share the database, so only the order of this test's products is checked
+	private List<Long> pageThrough(String sortBy, String sortOrder, int pageSize) {
+		Set<Long> mine = saved.stream().map(Product::getProductId).collect(Collectors.toSet());
+		List<Long> seen = new ArrayList<>();
+		String cursor = null;
+		do {
+			KeysetPager.Slice<Product> slice = keysetPager.fetch(Product.class, "productId", SORT_KEYS, sortBy,
+					sortOrder, cursor, pageSize);
+			slice.content().stream().map(Product::getProductId).filter(mine::contains).forEach(seen::add);
+			cursor = slice.nextCursor();
+		} while (cursor != null);
+		return seen;
+	}
+
+	private List<Long> expected(Comparator<Product> order) {
+		return saved.stream().sorted(order).map(Product::getProductId).toList();
+	}
+
+	@Test
+	void pagesThroughTiesOnTheSortKeyInBothDirections() {
+		Comparator<Product> byPrice = Comparator.comparingDouble(Product::getPrice)
+				.thenComparing(Product::getProductId);
+
+		assertEquals(expected(byPrice), pageThrough("price", "asc", 2));
+		assertEquals(expected(byPrice.reversed()), pageThrough("price", "desc", 2));
+		assertEquals(expected(Comparator.comparing(Product::getProductId)), pageThrough("productId", "asc", 3));
+		assertEquals(expected(Comparator.comparing(Product::getProductId).reversed()),
+				pageThrough("productId", "desc", 3));
+	}
+
+	@Test
+	void cursorCarriesTheLastRowOfThePage() {
+		KeysetPager.Slice<Product> first = keysetPager.fetch(Product.class, "productId", SORT_KEYS, "productName",
+				"asc", null, 1);
+		Product last = first.content().get(0);
+
+		String raw = new String(Base64.getUrlDecoder().decode(first.nextCursor()), StandardCharsets.UTF_8);
+		assertEquals(String.join("\u001f", "productName", "asc", "1", last.getProductName(),
+				last.getProductId().toString()), raw);
+
+		KeysetPager.Slice<Product> second = keysetPager.fetch(Product.class, "productId", SORT_KEYS, "productName",
+				"asc", first.nextCursor(), 1);
+		Comparator<Product> byName = Comparator.comparing(Product::getProductName)
+				.thenComparing(Product::getProductId);
+		assertEquals(1, second.content().size());
+		assertEquals(-1, Integer.signum(byName.compare(last, second.content().get(0))));
+	}
+
+	@Test
+	void rejectsTamperedAndGarbageCursors() {
+		String cursor = keysetPager.fetch(Product.class, "productId", SORT_KEYS, "price", "asc", null, 1)
+				.nextCursor();
+
+		assertEquals("Cursor does not match the requested sort", assertThrows(APIException.class,
+				() -> keysetPager.fetch(Product.class, "productId", SORT_KEYS, "price", "desc", cursor, 1))
+				.getMessage());
+		assertEquals("Cursor does not match the requested sort", assertThrows(APIException.class,
+				() -> keysetPager.fetch(Product.class, "productId", SORT_KEYS, "productName", "asc", cursor, 1))
+				.getMessage());
+		assertEquals("Cursor does not match the requested sort", assertThrows(APIException.class,
+				() -> keysetPager.fetch(Product.class, "productId", SORT_KEYS, "price", "asc", encode("price", "asc"),
+						1)).getMessage());
+		for (String garbage : List.of("not base64!", encode("price", "asc", "1", "cheap", "1"),
+				encode("price", "asc", "1", "10.0", "one"))) {
+			assertEquals("Invalid cursor", assertThrows(APIException.class,
+					() -> keysetPager.fetch(Product.class, "productId", SORT_KEYS, "price", "asc", garbage, 1))
+					.getMessage(), garbage);
+		}
+		assertThrows(APIException.class,
+				() -> keysetPager.fetch(Product.class, "productId", SORT_KEYS, "description", "asc", null, 1));
+	}
+
+	@Test
+	void cursorSortKeysHaveACompositeIndexWithTheId() {
+		assertEquals(List.of("PRICE", "PRODUCT_ID"), indexColumns("IDX_PRODUCTS_PRICE_ID"));
+		assertEquals(List.of("SPECIAL_PRICE", "PRODUCT_ID"), indexColumns("IDX_PRODUCTS_SPECIAL_PRICE_ID"));
+		assertEquals(List.of("ORDER_DATE", "ORDER_ID"), indexColumns("IDX_ORDERS_ORDER_DATE_ID"));
+		assertEquals(List.of("LAST_NAME", "USER_ID"), indexColumns("IDX_USERS_LAST_NAME_ID"));
+	}
+
+	private List<String> indexColumns(String indexName) {
+		return jdbcTemplate.queryForList("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEX_COLUMNS "
+				+ "WHERE INDEX_NAME = ? ORDER BY ORDINAL_POSITION", String.class, indexName);
+	}
+
+	private static String encode(String... parts) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(String.join("\u001f", parts).getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,90 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CartExpiryJobTests {
+
+	@Autowired
+	private CartExpiryJob expiryJob;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long saveProduct(Category category, String name, int quantity) {
+		Product product = new Product();
+		product.setProductName(name);
+		product.setDescription("Held in idle carts");
+		product.setCategory(category);
+		product.setQuantity(quantity);
+		product.setPrice(100);
+		product.setSpecialPrice(100);
+		return productRepo.save(product).getProductId();
+	}
+
+	// updatedAt is stamped by the entity, so carts are written by JDBC to age them
+	private Long insertCart(LocalDateTime updatedAt, Long productId, int quantity) {
+		jdbcTemplate.update("INSERT INTO carts (total_price, updated_at) VALUES (?, ?)", 100.0 * quantity,
+				updatedAt != null ? Timestamp.valueOf(updatedAt) : null);
+		Long cartId = jdbcTemplate.queryForObject("SELECT MAX(cart_id) FROM carts", Long.class);
+		jdbcTemplate.update("INSERT INTO cart_items (cart_id, product_id, quantity, discount, product_price) "
+				+ "VALUES (?, ?, ?, 0, 100)", cartId, productId, quantity);
+		return cartId;
+	}
+
+	private int lines(Long cartId) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cart_items WHERE cart_id = ?", Integer.class, cartId);
+	}
+
+	private double total(Long cartId) {
+		return jdbcTemplate.queryForObject("SELECT total_price FROM carts WHERE cart_id = ?", Double.class, cartId);
+	}
+
+	@Test
+	void idleCartsGiveTheirStockBack() {
+		Category category = new Category();
+		category.setCategoryName("Cart expiry");
+		category = categoryRepo.save(category);
+		Long phone = saveProduct(category, "Expiry phone", 10);
+		Long watch = saveProduct(category, "Expiry watch", 20);
+
+		LocalDateTime now = LocalDateTime.now();
+		Long idle = insertCart(now.minusHours(2), phone, 3);
+		Long legacy = insertCart(null, watch, 4);
+		Long fresh = insertCart(now.minusMinutes(5), phone, 2);
+
+		expiryJob.expireIdleCarts();
+
+		assertEquals(0, lines(idle));
+		assertEquals(0.0, total(idle));
+		// Carts from before updatedAt existed count as idle
+		assertEquals(0, lines(legacy));
+		assertEquals(0.0, total(legacy));
+		assertEquals(1, lines(fresh));
+		assertEquals(200.0, total(fresh));
+
+		assertEquals(13, productRepo.findQuantityById(phone));
+		assertEquals(24, productRepo.findQuantityById(watch));
+	}
+}
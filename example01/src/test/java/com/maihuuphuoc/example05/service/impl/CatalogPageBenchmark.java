@@ -0,0 +1,133 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+import com.maihuuphuoc.example05.service.ProductService;
+
+/**
+ * Catalog page latency with no carts and with 100k carts holding the listed
+ * products. Each call evicts the catalog cache first, so every page is read
+ * from the database. Run with {@code mvn test -Pbenchmark}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CatalogPageBenchmark {
+	private static final Logger logger = LoggerFactory.getLogger(CatalogPageBenchmark.class);
+
+	private static final int PRODUCTS = 40;
+	private static final int PAGE_SIZE = 20;
+	private static final int CARTS = 100_000;
+	private static final int WARMUP = 1000;
+	private static final int ITERATIONS = 500;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ProductCatalogCache catalogCache;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void pageLatencyDoesNotGrowWithCarts() {
+		Category category = new Category();
+		category.setCategoryName("Catalog benchmark");
+		Long categoryId = categoryRepo.save(category).getCategoryId();
+		List<Long> productIds = new ArrayList<>();
+		for (int i = 0; i < PRODUCTS; i++) {
+			Product product = new Product();
+			product.setProductName("Catalog product " + i);
+			product.setDescription("Listed on the benchmark page");
+			product.setCategory(category);
+			product.setQuantity(1_000_000);
+			product.setPrice(100);
+			product.setSpecialPrice(100);
+			productIds.add(productRepo.save(product).getProductId());
+		}
+
+		long withoutCarts = medianPageNanos(categoryId);
+
+		List<Long> cartIds = insertCarts(productIds.subList(0, PAGE_SIZE));
+		try {
+			long withCarts = medianPageNanos(categoryId);
+			logger.info("Catalog page of {} products: {} us median with no carts, {} us with {} carts",
+					PAGE_SIZE, withoutCarts / 1000, withCarts / 1000, CARTS);
+			// Loading the cart lines would cost 5000 rows per listed product; allow only noise
+			assertTrue(withCarts < 2 * withoutCarts + 1_000_000,
+					"Page took " + withCarts + " ns with carts, " + withoutCarts + " ns without");
+		} finally {
+			deleteCarts(cartIds);
+		}
+	}
+
+	private long medianPageNanos(Long categoryId) {
+		for (int i = 0; i < WARMUP; i++) {
+			loadPage(categoryId);
+		}
+		long[] samples = new long[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			long began = System.nanoTime();
+			loadPage(categoryId);
+			samples[i] = System.nanoTime() - began;
+		}
+		Arrays.sort(samples);
+		return samples[ITERATIONS / 2];
+	}
+
+	private void loadPage(Long categoryId) {
+		catalogCache.evictCategory(categoryId);
+		assertEquals(PAGE_SIZE,
+				productService.searchByCategory(categoryId, 0, PAGE_SIZE, "productId", "asc").getContent().size());
+	}
+
+	// One cart line per cart, spread over the products on the first page
+	private List<Long> insertCarts(List<Long> productIds) {
+		Long before = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(cart_id), 0) FROM carts", Long.class);
+		List<Object[]> carts = new ArrayList<>(CARTS);
+		for (int i = 0; i < CARTS; i++) {
+			carts.add(new Object[] { 0.0 });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO carts (total_price, updated_at) VALUES (?, CURRENT_TIMESTAMP)", carts);
+
+		List<Long> cartIds = jdbcTemplate.queryForList("SELECT cart_id FROM carts WHERE cart_id > ? ORDER BY cart_id",
+				Long.class, before);
+		List<Object[]> lines = new ArrayList<>(cartIds.size());
+		for (int i = 0; i < cartIds.size(); i++) {
+			lines.add(new Object[] { cartIds.get(i), productIds.get(i % productIds.size()) });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO cart_items (cart_id, product_id, quantity, discount, product_price) "
+				+ "VALUES (?, ?, 1, 0, 100)", lines);
+		return cartIds;
+	}
+
+	private void deleteCarts(List<Long> cartIds) {
+		Long first = cartIds.get(0);
+		Long last = cartIds.get(cartIds.size() - 1);
+		jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id BETWEEN ? AND ?", first, last);
+		jdbcTemplate.update("DELETE FROM carts WHERE cart_id BETWEEN ? AND ?", first, last);
+	}
+}
@@ -0,0 +1,127 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.maihuuphuoc.example05.entity.Cart;
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.entity.User;
+import com.maihuuphuoc.example05.repository.CartRepo;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+import com.maihuuphuoc.example05.repository.UserRepo;
+import com.maihuuphuoc.example05.service.OrderService;
+
+/**
+ * Checkout latency for carts of 1, 10 and 100 lines. Each cart is filled by
+ * JDBC outside the timed section, then checked out through
+ * {@link OrderService#placeOrder}. Run with {@code mvn test -Pbenchmark}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CheckoutBenchmark {
+	private static final Logger logger = LoggerFactory.getLogger(CheckoutBenchmark.class);
+
+	private static final String EMAIL = "checkout.benchmark@example.com";
+	private static final int[] LINES = { 1, 10, 100 };
+	private static final int WARMUP = 100;
+	private static final int ITERATIONS = 200;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private UserRepo userRepo;
+
+	@Autowired
+	private CartRepo cartRepo;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void checkoutLatencyByCartSize() {
+		User user = new User();
+		user.setFirstName("Checkout");
+		user.setLastName("Benchmark");
+		user.setMobileNumber("0123456789");
+		user.setEmail(EMAIL);
+		user.setPassword("secret");
+		user = userRepo.save(user);
+		Cart cart = new Cart();
+		cart.setUser(user);
+		Long cartId = cartRepo.save(cart).getCartId();
+
+		Category category = new Category();
+		category.setCategoryName("Checkout benchmark");
+		category = categoryRepo.save(category);
+		List<Long> productIds = new ArrayList<>();
+		for (int i = 0; i < LINES[LINES.length - 1]; i++) {
+			Product product = new Product();
+			product.setProductName("Checkout product " + i);
+			product.setDescription("Bought in the benchmark");
+			product.setCategory(category);
+			product.setQuantity(1_000_000);
+			product.setPrice(100);
+			product.setSpecialPrice(100);
+			productIds.add(productRepo.save(product).getProductId());
+		}
+
+		// Every size is warmed up before any is measured, so the first one does not pay for the JIT
+		for (int i = 0; i < WARMUP; i++) {
+			for (int lines : LINES) {
+				checkout(cartId, productIds.subList(0, lines));
+			}
+		}
+		long[] medians = new long[LINES.length];
+		for (int size = 0; size < LINES.length; size++) {
+			long[] samples = new long[ITERATIONS];
+			for (int i = 0; i < ITERATIONS; i++) {
+				samples[i] = checkout(cartId, productIds.subList(0, LINES[size]));
+			}
+			Arrays.sort(samples);
+			medians[size] = samples[ITERATIONS / 2];
+			logger.info("Checkout of a {}-line cart: {} us median, {} us p90", LINES[size], medians[size] / 1000,
+					samples[ITERATIONS * 9 / 10] / 1000);
+		}
+		// A statement per line would make the 100-line checkout cost a hundred of the 1-line one
+		assertTrue(medians[2] < 20 * medians[0],
+				"100 lines took " + medians[2] + " ns, 1 line " + medians[0] + " ns");
+	}
+
+	// Fills the cart as adding items would have, then times placing the order
+	private long checkout(Long cartId, List<Long> productIds) {
+		List<Object[]> lines = new ArrayList<>(productIds.size());
+		for (Long productId : productIds) {
+			lines.add(new Object[] { cartId, productId });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO cart_items (cart_id, product_id, quantity, discount, product_price) "
+				+ "VALUES (?, ?, 1, 0, 100)", lines);
+		jdbcTemplate.update("UPDATE carts SET total_price = ? WHERE cart_id = ?", 100.0 * productIds.size(), cartId);
+
+		long began = System.nanoTime();
+		int ordered = orderService.placeOrder(EMAIL, cartId, "card").getOrderItems().size();
+		long elapsed = System.nanoTime() - began;
+		assertEquals(productIds.size(), ordered);
+		return elapsed;
+	}
+}
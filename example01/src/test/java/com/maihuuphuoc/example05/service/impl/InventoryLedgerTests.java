@@ -0,0 +1,98 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class InventoryLedgerTests {
+
+	private static final Long PRODUCT_ID = 1L;
+
+	private static final int THREADS = 400;
+
+	/** Stands in for the products row and its conditional UPDATE. */
+	private static final class Stock {
+		private final AtomicInteger quantity;
+
+		Stock(int quantity) {
+			this.quantity = new AtomicInteger(quantity);
+		}
+
+		boolean reserve(int n) {
+			while (true) {
+				int current = quantity.get();
+				if (current < n) {
+					return false;
+				}
+				if (quantity.compareAndSet(current, current - n)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	@Test
+	void releasesAndStaleCountersNeverOversell() throws Exception {
+		int initialStock = 200;
+		Stock stock = new Stock(initialStock);
+		InventoryLedger ledger = new InventoryLedger(100, Duration.ofMinutes(1));
+		AtomicLong held = new AtomicLong();
+
+		runConcurrently(() -> {
+			for (int i = 0; i < 500; i++) {
+				if (ledger.tryReserve(PRODUCT_ID, 1, id -> stock.quantity.get())) {
+					if (!stock.reserve(1)) {
+						// A stale counter only costs a trip to the database, which refuses the sale
+						ledger.invalidate(PRODUCT_ID);
+						continue;
+					}
+					held.incrementAndGet();
+					if (ThreadLocalRandom.current().nextBoolean()) {
+						stock.quantity.incrementAndGet();
+						ledger.release(PRODUCT_ID, 1);
+						held.decrementAndGet();
+					}
+				}
+				if (i % 100 == 0) {
+					ledger.invalidate(PRODUCT_ID);
+				}
+			}
+		});
+
+		assertEquals(initialStock, stock.quantity.get() + held.get());
+		assertFalse(stock.quantity.get() < 0);
+	}
+
+	private void runConcurrently(Runnable task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					task.run();
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.exceptions.APIException;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class InventoryReservationsTests {
+	private static final Logger logger = LoggerFactory.getLogger(InventoryReservationsTests.class);
+
+	// Far more shoppers than pooled connections, as on a flash sale
+	private static final int THREADS = 400;
+
+	@Autowired
+	private InventoryReservations reservations;
+
+	@Autowired
+	private ProductRepo productRepo;
+
+	@Autowired
+	private CategoryRepo categoryRepo;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private Long saveProduct(String name, int quantity) {
+		Category category = new Category();
+		category.setCategoryName("Category of " + name);
+		category = categoryRepo.save(category);
+
+		Product product = new Product();
+		product.setProductName(name);
+		product.setDescription("Stock for " + name);
+		product.setCategory(category);
+		product.setQuantity(quantity);
+		product.setPrice(100);
+		product.setDiscount(0);
+		product.setSpecialPrice(100);
+		return productRepo.save(product).getProductId();
+	}
+
+	@Test
+	void hotProductIsNeverOversold() throws Exception {
+		int initialStock = 5_000;
+		Long productId = saveProduct("Hot product", initialStock);
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		AtomicLong sold = new AtomicLong();
+		AtomicLong turnedAway = new AtomicLong();
+
+		long elapsed = runConcurrently(() -> {
+			while (true) {
+				int quantity = ThreadLocalRandom.current().nextInt(1, 4);
+				try {
+					transaction.executeWithoutResult(status -> reservations
+							.reserve(productRepo.findById(productId).orElseThrow(), quantity));
+					sold.addAndGet(quantity);
+				} catch (APIException e) {
+					turnedAway.incrementAndGet();
+					if (productRepo.findQuantityById(productId) == 0) {
+						return;
+					}
+				}
+			}
+		});
+		logger.info("{} threads sold {} units of one product in {} ms: {} units/s, {} turned away", THREADS,
+				sold.get(), elapsed / 1_000_000, sold.get() * 1_000_000_000L / elapsed, turnedAway.get());
+
+		assertEquals(initialStock, sold.get());
+		assertEquals(0, productRepo.findQuantityById(productId));
+		assertTrue(turnedAway.get() >= THREADS);
+	}
+
+	@Test
+	void releasedStockIsSoldAgainButNeverTwice() throws Exception {
+		int initialStock = 100;
+		Long productId = saveProduct("Returned product", initialStock);
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		AtomicLong held = new AtomicLong();
+		AtomicLong moved = new AtomicLong();
+
+		long elapsed = runConcurrently(() -> {
+			int mine = 0;
+			for (int i = 0; i < 50; i++) {
+				boolean give = mine > 0 && ThreadLocalRandom.current().nextInt(3) == 0;
+				int quantity = give ? ThreadLocalRandom.current().nextInt(1, mine + 1)
+						: ThreadLocalRandom.current().nextInt(1, 4);
+				try {
+					transaction.executeWithoutResult(status -> {
+						Product product = productRepo.findById(productId).orElseThrow();
+						if (give) {
+							reservations.release(product, quantity);
+						} else {
+							reservations.reserve(product, quantity);
+						}
+					});
+					mine += give ? -quantity : quantity;
+					held.addAndGet(give ? -quantity : quantity);
+					moved.addAndGet(quantity);
+				} catch (APIException e) {
+					// Sold out for now; someone else may give units back
+				}
+			}
+		});
+		logger.info("{} threads reserved and released {} units of one product in {} ms: {} units/s", THREADS,
+				moved.get(), elapsed / 1_000_000, moved.get() * 1_000_000_000L / elapsed);
+
+		int left = productRepo.findQuantityById(productId);
+		assertTrue(left >= 0);
+		assertEquals(initialStock, left + held.get());
+	}
+
+	// Returns the nanoseconds from the common start until the last thread finished
+	private long runConcurrently(Runnable task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					task.run();
+					return null;
+				}));
+			}
+			long began = System.nanoTime();
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			return System.nanoTime() - began;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
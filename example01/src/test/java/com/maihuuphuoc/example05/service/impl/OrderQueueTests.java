@@ -0,0 +1,106 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.maihuuphuoc.example05.exceptions.MyGlobalExceptionHandler;
+import com.maihuuphuoc.example05.payloads.OrderDTO;
+import com.maihuuphuoc.example05.payloads.OrderRequestDTO;
+import com.maihuuphuoc.example05.payloads.OrderRequestDTO.Status;
+import com.maihuuphuoc.example05.service.OrderService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OrderQueueTests {
+
+	private static final String EMAIL = "alice@example.com";
+
+	private final OrderService orderService = mock(OrderService.class);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private OrderQueue queue;
+
+	@BeforeEach
+	void setUp() {
+		// One worker and one waiting slot, so the third order in flight is turned away
+		queue = new OrderQueue();
+		ReflectionTestUtils.setField(queue, "capacity", 1);
+		ReflectionTestUtils.setField(queue, "workers", 1);
+		ReflectionTestUtils.setField(queue, "retentionMinutes", 60L);
+		ReflectionTestUtils.setField(queue, "maximumSize", 100L);
+		ReflectionTestUtils.setField(queue, "orderService", orderService);
+		ReflectionTestUtils.setField(queue, "meterRegistry", new SimpleMeterRegistry());
+		queue.init();
+		when(orderService.placeOrder(anyString(), anyLong(), anyString())).thenAnswer(invocation -> {
+			release.await(10, TimeUnit.SECONDS);
+			return new OrderDTO();
+		});
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		release.countDown();
+		queue.shutdown();
+	}
+
+	@Test
+	void retryWithTheSameKeyGetsTheOriginalRequest() throws InterruptedException {
+		OrderRequestDTO first = queue.submit(EMAIL, 1L, "card", "checkout-1");
+		OrderRequestDTO retry = queue.submit(EMAIL, 1L, "card", "checkout-1");
+		OrderRequestDTO otherUser = queue.submit("bob@example.com", 2L, "card", "checkout-1");
+
+		assertEquals(first.getRequestId(), retry.getRequestId());
+		assertNotEquals(first.getRequestId(), otherUser.getRequestId());
+
+		release.countDown();
+		verify(orderService, timeout(5000).times(1)).placeOrder(EMAIL, 1L, "card");
+		verify(orderService, timeout(5000)).placeOrder("bob@example.com", 2L, "card");
+		OrderRequestDTO done = queue.getRequest(EMAIL, first.getRequestId());
+		for (int i = 0; i < 500 && done.getStatus() != Status.COMPLETED; i++) {
+			Thread.sleep(10);
+			done = queue.getRequest(EMAIL, first.getRequestId());
+		}
+		// A retry after the order was placed sees the result rather than placing another one
+		assertEquals(Status.COMPLETED, done.getStatus());
+		assertEquals(done, queue.submit(EMAIL, 1L, "card", "checkout-1"));
+		verify(orderService, times(1)).placeOrder(EMAIL, 1L, "card");
+	}
+
+	@Test
+	void fullQueueIsRejectedWithServiceUnavailable() {
+		queue.submit(EMAIL, 1L, "card", "checkout-1");
+		queue.submit(EMAIL, 2L, "card", "checkout-2");
+
+		RejectedExecutionException rejected = assertThrows(RejectedExecutionException.class,
+				() -> queue.submit(EMAIL, 3L, "card", "checkout-3"));
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+				new MyGlobalExceptionHandler().handleRejectedExecutionException(rejected).getStatusCode());
+
+		// The rejected request was not kept, so its retry is queued once there is room
+		release.countDown();
+		verify(orderService, timeout(5000)).placeOrder(EMAIL, 2L, "card");
+		OrderRequestDTO retried = queue.submit(EMAIL, 3L, "card", "checkout-3");
+		verify(orderService, timeout(5000)).placeOrder(EMAIL, 3L, "card");
+		assertEquals(retried.getRequestId(), queue.submit(EMAIL, 3L, "card", "checkout-3").getRequestId());
+		verify(orderService, times(1)).placeOrder(EMAIL, 3L, "card");
+	}
+}
@@ -0,0 +1,144 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+class ProductFacetIndexTests {
+
+	private final ProductRepo productRepo = mock(ProductRepo.class);
+
+	private ProductFacetIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new ProductFacetIndex();
+		ReflectionTestUtils.setField(index, "priceEdges", new double[] { 0, 50, 100, 200, 500, 1000, 2000, 5000 });
+		ReflectionTestUtils.setField(index, "discountEdges", new double[] { 0, 10, 25, 50 });
+		ReflectionTestUtils.setField(index, "productRepo", productRepo);
+		index.init();
+
+		// Outside a transaction the index applies changes right away
+		index.index(product(1L, 1L, 40, 0, 5));
+		index.index(product(2L, 1L, 120, 20, 0));
+		index.index(product(3L, 2L, 420, 30, 3));
+		index.index(product(4L, 2L, 80, 10, 2));
+		index.index(product(5L, 3L, 1500, 60, 0));
+	}
+
+	private static Product product(Long productId, Long categoryId, double specialPrice, double discount,
+			int quantity) {
+		Category category = new Category();
+		category.setCategoryId(categoryId);
+		Product product = new Product();
+		product.setProductId(productId);
+		product.setCategory(category);
+		product.setSpecialPrice(specialPrice);
+		product.setDiscount(discount);
+		product.setQuantity(quantity);
+		return product;
+	}
+
+	private static ProductFacetIndex.Filter filter(Set<Long> categoryIds, Double minPrice, Double maxPrice,
+			Double minDiscount, Boolean inStock) {
+		return new ProductFacetIndex.Filter(categoryIds, minPrice, maxPrice, minDiscount, inStock);
+	}
+
+	@Test
+	void filtersAreAndedTogether() {
+		ProductFacetIndex.Result result = index.query(filter(Set.of(1L, 2L), null, null, null, true), 0, 10);
+		assertEquals(3, result.total());
+		assertEquals(List.of(1L, 3L, 4L), result.productIds());
+
+		result = index.query(filter(null, 50.0, 500.0, 10.0, null), 0, 10);
+		assertEquals(List.of(2L, 3L, 4L), result.productIds());
+
+		result = index.query(filter(null, 50.0, 500.0, 10.0, false), 0, 10);
+		assertEquals(List.of(2L), result.productIds());
+
+		result = index.query(filter(Set.of(3L), null, 1000.0, null, null), 0, 10);
+		assertEquals(0, result.total());
+	}
+
+	@Test
+	void pagesThroughMatchesInIndexingOrder() {
+		ProductFacetIndex.Result result = index.query(filter(null, null, null, null, null), 1, 2);
+		assertEquals(5, result.total());
+		assertEquals(List.of(2L, 3L), result.productIds());
+
+		result = index.query(filter(null, null, null, null, null), 4, 2);
+		assertEquals(List.of(5L), result.productIds());
+	}
+
+	@Test
+	void eachFacetIsCountedAgainstTheOtherFilters() {
+		Map<String, Map<String, Long>> facets = index.query(filter(Set.of(1L, 2L), null, null, null, true), 0, 10)
+				.facets();
+
+		// The category filter is left out of the category counts, so category 3 shows what choosing it gives
+		assertEquals(Map.of("1", 1L, "2", 2L), facets.get("category"));
+		assertEquals(1L, facets.get("price").get("0-50"));
+		assertEquals(1L, facets.get("price").get("50-100"));
+		assertEquals(0L, facets.get("price").get("100-200"));
+		assertEquals(1L, facets.get("price").get("200-500"));
+		assertEquals(0L, facets.get("price").get("1000-2000"));
+		assertEquals(Map.of("0-10", 1L, "10-25", 1L, "25-50", 1L, "50+", 0L), facets.get("discount"));
+		// In stock or not, within categories 1 and 2
+		assertEquals(Map.of("true", 3L, "false", 1L), facets.get("inStock"));
+
+		facets = index.query(filter(null, null, null, null, null), 0, 10).facets();
+		assertEquals(Map.of("1", 2L, "2", 2L, "3", 1L), facets.get("category"));
+		assertEquals(Map.of("true", 3L, "false", 2L), facets.get("inStock"));
+	}
+
+	@Test
+	void stockIsReadWhenTheChangeIsApplied() {
+		when(productRepo.findQuantityById(1L)).thenReturn(0);
+		index.refreshStock(1L);
+		assertEquals(List.of(1L, 2L, 5L), index.query(filter(null, null, null, null, false), 0, 10).productIds());
+
+		// A late hook for an earlier reservation still writes the quantity the database holds now
+		when(productRepo.findQuantityById(1L)).thenReturn(4);
+		index.refreshStock(1L);
+		assertEquals(List.of(1L, 3L, 4L), index.query(filter(null, null, null, null, true), 0, 10).productIds());
+	}
+
+	@Test
+	void rebuildKeepsWhatCommitsChangedWhileItRead() {
+		when(productRepo.findQuantityById(4L)).thenReturn(0);
+		when(productRepo.findFacetRowsAfter(eq(0L), any())).thenAnswer(invocation -> {
+			// Commits landing after the batch was read, before it is applied
+			index.remove(2L);
+			index.index(product(3L, 2L, 45, 30, 3));
+			index.refreshStock(4L);
+			return List.of(row(1L, 1L, 40, 0, 5), row(2L, 1L, 120, 20, 0), row(3L, 2L, 420, 30, 3),
+					row(4L, 2L, 80, 10, 2), row(5L, 3L, 1500, 60, 0));
+		});
+		index.rebuild();
+
+		ProductFacetIndex.Result result = index.query(filter(null, null, null, null, null), 0, 10);
+		assertEquals(4, result.total());
+		assertEquals(List.of(1L, 3L, 4L, 5L), result.productIds());
+		assertEquals(List.of(1L, 3L), index.query(filter(null, null, 50.0, null, null), 0, 10).productIds());
+		assertEquals(List.of(1L, 3L), index.query(filter(null, null, null, null, true), 0, 10).productIds());
+	}
+
+	private static Object[] row(Long productId, Long categoryId, double specialPrice, double discount,
+			Integer quantity) {
+		return new Object[] { productId, categoryId, specialPrice, discount, quantity };
+	}
+}
@@ -0,0 +1,156 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.payloads.ProductImportReport;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+import com.maihuuphuoc.example05.service.ProductImportService.Format;
+
+import jakarta.validation.Validation;
+
+class ProductImportServiceImplTests {
+
+	private static final String HEADER = "productName,description,quantity,price,discount,categoryId\n";
+
+	private final CategoryRepo categoryRepo = mock(CategoryRepo.class);
+
+	private final ProductImportBatch importBatch = mock(ProductImportBatch.class);
+
+	// Every product handed to a batch that committed
+	private final List<Product> imported = new ArrayList<>();
+
+	private ProductImportServiceImpl importService;
+
+	@BeforeEach
+	void setUp() {
+		Category category = new Category();
+		category.setCategoryId(1L);
+		category.setCategoryName("Phones");
+		when(categoryRepo.findAll()).thenReturn(List.of(category));
+		doAnswer(invocation -> imported.addAll(invocation.getArgument(0))).when(importBatch).insert(anyList());
+
+		importService = new ProductImportServiceImpl();
+		ReflectionTestUtils.setField(importService, "batchSize", 3);
+		ReflectionTestUtils.setField(importService, "maxErrors", 1000);
+		ReflectionTestUtils.setField(importService, "categoryRepo", categoryRepo);
+		ReflectionTestUtils.setField(importService, "productRepo", mock(ProductRepo.class));
+		ReflectionTestUtils.setField(importService, "importBatch", importBatch);
+		ReflectionTestUtils.setField(importService, "validator",
+				Validation.buildDefaultValidatorFactory().getValidator());
+		ReflectionTestUtils.setField(importService, "objectMapper", new ObjectMapper());
+	}
+
+	private ProductImportReport importCsv(String body) throws IOException {
+		return importService.importProducts(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+				Format.CSV);
+	}
+
+	private static String errors(ProductImportReport report) {
+		return report.getErrors().stream().map(error -> error.getLine() + ": " + error.getMessage()).toList()
+				.toString();
+	}
+
+	@Test
+	void readsQuotedFieldsWithCommasAndEscapedQuotes() throws IOException {
+		ProductImportReport report = importCsv(HEADER
+				+ "\"Phone, 64GB\",\"The \"\"best\"\" phone\",5,100,10,1\n"
+				+ "Plain phone,Nothing quoted,,50,,1\n");
+
+		assertEquals(2, report.getImported(), errors(report));
+		assertEquals("Phone, 64GB", imported.get(0).getProductName());
+		assertEquals("The \"best\" phone", imported.get(0).getDescription());
+		assertEquals(5, imported.get(0).getQuantity());
+		assertEquals(90.0, imported.get(0).getSpecialPrice());
+		assertEquals(0, imported.get(1).getQuantity());
+	}
+
+	@Test
+	void quotedFieldMaySpanLines() throws IOException {
+		ProductImportReport report = importCsv(HEADER
+				+ "Phone,\"First line\nSecond line\n\",5,100,0,1\n"
+				+ "Broken,Too short,x,100,0,1\n");
+
+		assertEquals(1, report.getImported());
+		assertEquals("First line\nSecond line\n", imported.get(0).getDescription());
+		// Errors point at the line the record starts on
+		assertEquals("[5: Invalid quantity: x]", errors(report));
+	}
+
+	@Test
+	void unbalancedQuoteStopsAtTheRecordCap() throws IOException {
+		StringBuilder body = new StringBuilder(HEADER).append("Phone,\"Never closed,5,100,0,1\n");
+		String filler = "x".repeat(1000) + "\n";
+		for (int i = 0; i < 1100; i++) {
+			body.append(filler);
+		}
+		body.append("Last phone,Still imported,1,100,0,1\n");
+
+		ProductImportReport report = importCsv(body.toString());
+
+		assertEquals(1, report.getImported());
+		assertEquals("Last phone", imported.get(0).getProductName());
+		assertEquals(2, report.getErrors().get(0).getLine());
+		assertEquals("Unterminated quoted field", report.getErrors().get(0).getMessage());
+		// Past the cap the rest of the body is read as records again rather than swallowed
+		assertEquals(report.getRowsRead() - 1, report.getRejected());
+	}
+
+	@Test
+	void rejectsQuantitiesOutsideTheIntRange() throws IOException {
+		ProductImportReport report = importCsv(HEADER
+				+ "Phone,Too many,2147483648,100,0,1\n"
+				+ "Watch,Far too few,-2147483649,100,0,1\n"
+				+ "Tablet,Largest stock,2147483647,100,0,1\n");
+
+		assertEquals(1, report.getImported());
+		assertEquals(Integer.MAX_VALUE, imported.get(0).getQuantity());
+		assertEquals("[2: Invalid quantity: 2147483648, 3: Invalid quantity: -2147483649]", errors(report));
+	}
+
+	@Test
+	void failedBatchIsRetriedRowByRow() throws IOException {
+		List<Long> retriedIds = new ArrayList<>();
+		doAnswer(invocation -> {
+			List<Product> products = invocation.getArgument(0);
+			if (products.size() == 1) {
+				retriedIds.add(products.get(0).getProductId());
+			}
+			products.forEach(product -> product.setProductId(42L));
+			if (products.stream().anyMatch(product -> product.getProductName().equals("Rejected"))) {
+				throw new IllegalStateException("Duplicate entry");
+			}
+			imported.addAll(products);
+			return null;
+		}).when(importBatch).insert(anyList());
+
+		ProductImportReport report = importCsv(HEADER
+				+ "Phone,First row,1,100,0,1\n"
+				+ "Rejected,Second row,1,100,0,1\n"
+				+ "Watch,Third row,1,100,0,1\n");
+
+		assertEquals(2, report.getImported());
+		assertEquals(List.of("Phone", "Watch"), imported.stream().map(Product::getProductName).toList());
+		assertEquals("[3: Not saved: Duplicate entry]", errors(report));
+		// The ids given by the rolled back batch are dropped before each row is retried
+		assertEquals(Arrays.asList(null, null, null), retriedIds);
+	}
+}
@@ -0,0 +1,100 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.maihuuphuoc.example05.entity.Category;
+import com.maihuuphuoc.example05.entity.Product;
+
+class ProductSearchIndexTests {
+
+	private static final Comparator<ProductSearchIndex.Hit> RELEVANCE = ProductSearchIndex.ordering("relevance",
+			"desc");
+
+	private ProductSearchIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new ProductSearchIndex();
+	}
+
+	private static Product product(Long productId, Long categoryId, String productName, String description) {
+		Category category = new Category();
+		category.setCategoryId(categoryId);
+		Product product = new Product();
+		product.setProductId(productId);
+		product.setCategory(category);
+		product.setProductName(productName);
+		product.setDescription(description);
+		return product;
+	}
+
+	private List<Long> search(String keyword, Long categoryId) {
+		return index.search(keyword, categoryId, RELEVANCE, 10).hits().stream()
+				.map(ProductSearchIndex.Hit::productId)
+				.toList();
+	}
+
+	@Test
+	void matchesWithOrWithoutDiacritics() {
+		// Outside a transaction the index applies changes right away
+		index.index(product(1L, 1L, "Điện thoại Samsung", "Màn hình lớn"));
+
+		assertEquals(List.of(1L), search("dien thoai", null));
+		assertEquals(List.of(1L), search("ĐIỆN THOẠI", null));
+		assertEquals(List.of(1L), search("man hinh", null));
+		assertEquals(List.of(), search("dien may", null));
+	}
+
+	@Test
+	void longTokensMatchAsPrefixesAndShortOnesAsWholeTerms() {
+		index.index(product(1L, 1L, "Samsung TV", "Smart television"));
+		index.index(product(2L, 1L, "Tivi Sony", "Bravia"));
+
+		assertEquals(List.of(1L), search("sams", null));
+		assertEquals(List.of(1L), search("tv", null));
+		assertEquals(List.of(), search("sa", null));
+		assertEquals(List.of(1L), search("tel", null));
+		assertEquals(List.of(2L), search("tiv son", null));
+	}
+
+	@Test
+	void ranksExactAndNameHitsFirst() {
+		index.index(product(1L, 1L, "Phone case", "Leather"));
+		index.index(product(2L, 1L, "Leather wallet", "Fits a phone"));
+		index.index(product(3L, 1L, "Phones", "Refurbished"));
+
+		// Exact name term, then a longer name term, then a description term
+		assertEquals(List.of(1L, 3L, 2L), search("phone", null));
+		assertEquals(List.of(2L, 1L), search("leather", null));
+	}
+
+	@Test
+	void filtersByCategory() {
+		index.index(product(1L, 1L, "Red shirt", "Cotton"));
+		index.index(product(2L, 2L, "Red shoes", "Leather"));
+
+		assertEquals(List.of(1L, 2L), search("red", null));
+		assertEquals(List.of(1L, 2L), search("red", 0L));
+		assertEquals(List.of(2L), search("red", 2L));
+		assertEquals(List.of(), search("red", 3L));
+	}
+
+	@Test
+	void keepsTheFirstHitsAndCountsTheRest() {
+		for (long productId = 1; productId <= 5; productId++) {
+			index.index(product(productId, 1L, "Cable " + productId, "Usb"));
+		}
+
+		ProductSearchIndex.Matches matches = index.search("cable", null,
+				ProductSearchIndex.ordering("productId", "desc"), 2);
+		assertEquals(5, matches.total());
+		assertEquals(List.of(5L, 4L), matches.hits().stream().map(ProductSearchIndex.Hit::productId).toList());
+		assertEquals(5, index.search("cable", null, RELEVANCE, 0).total());
+	}
+}
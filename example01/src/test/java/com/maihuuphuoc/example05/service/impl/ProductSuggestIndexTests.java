@@ -0,0 +1,129 @@
+package com.maihuuphuoc.example05.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.maihuuphuoc.example05.entity.Product;
+import com.maihuuphuoc.example05.repository.CategoryRepo;
+import com.maihuuphuoc.example05.repository.OrderItemRepo;
+import com.maihuuphuoc.example05.repository.ProductRepo;
+
+class ProductSuggestIndexTests {
+
+	private final ProductRepo productRepo = mock(ProductRepo.class);
+
+	private final CategoryRepo categoryRepo = mock(CategoryRepo.class);
+
+	private final OrderItemRepo orderItemRepo = mock(OrderItemRepo.class);
+
+	private ProductSuggestIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new ProductSuggestIndex();
+		ReflectionTestUtils.setField(index, "maxResults", 3);
+		ReflectionTestUtils.setField(index, "productRepo", productRepo);
+		ReflectionTestUtils.setField(index, "categoryRepo", categoryRepo);
+		ReflectionTestUtils.setField(index, "orderItemRepo", orderItemRepo);
+	}
+
+	private static Product product(Long productId, String productName) {
+		Product product = new Product();
+		product.setProductId(productId);
+		product.setProductName(productName);
+		return product;
+	}
+
+	private List<String> suggest(String prefix) {
+		return index.suggest(prefix, 10).stream().map(ProductSuggestIndex.Suggestion::text).toList();
+	}
+
+	@Test
+	void completesThePrefixOfAnyFoldedWord() {
+		// Outside a transaction the index applies changes right away
+		index.index(product(1L, "Điện thoại Samsung"));
+
+		assertEquals(List.of("Điện thoại Samsung"), suggest("thoai"));
+		assertEquals(List.of("Điện thoại Samsung"), suggest("Dien tho"));
+		assertEquals(List.of("Điện thoại Samsung"), suggest("SAMS"));
+		assertEquals(List.of(), suggest("phone"));
+		assertEquals(List.of(), suggest("  "));
+	}
+
+	@Test
+	void renamingReplacesTheOldKeys() {
+		index.index(product(1L, "Nokia 3310"));
+		index.index(product(1L, "Samsung Galaxy"));
+
+		assertEquals(List.of(), suggest("nok"));
+		assertEquals(List.of(), suggest("3310"));
+		assertEquals(List.of("Samsung Galaxy"), suggest("gal"));
+	}
+
+	@Test
+	void keepsTheBestCompletionsByUnitsSold() {
+		index.index(product(1L, "Phone A"));
+		index.index(product(2L, "Phone B"));
+		index.index(product(3L, "Phone C"));
+		index.index(product(4L, "Phone D"));
+		index.recordSales(Map.of(2L, 5, 4L, 1));
+
+		// Best sellers first, then the shorter and alphabetically first name, cut at max-results
+		assertEquals(List.of("Phone B", "Phone D", "Phone A"), suggest("phone"));
+		assertEquals(List.of("Phone B"), index.suggest("phone", 1).stream()
+				.map(ProductSuggestIndex.Suggestion::text).toList());
+
+		index.remove(2L);
+		assertEquals(List.of("Phone D", "Phone A", "Phone C"), suggest("ph"));
+	}
+
+	@Test
+	void removingTheLastSuggestionPrunesItsNodes() {
+		index.index(product(1L, "Nokia"));
+		index.index(product(2L, "Nokia Lumia"));
+		index.remove(2L);
+
+		assertEquals(List.of("Nokia"), suggest("nokia"));
+		assertEquals(List.of(), suggest("lum"));
+		Map<?, ?> children = (Map<?, ?>) ReflectionTestUtils.getField(ReflectionTestUtils.getField(index, "root"),
+				"children");
+		assertEquals(1, children.size());
+
+		index.remove(1L);
+		assertEquals(List.of(), suggest("n"));
+		assertTrue(children.isEmpty());
+	}
+
+	@Test
+	void rebuildKeepsWhatCommitsChangedWhileItRead() {
+		when(categoryRepo.findAll()).thenReturn(List.of());
+		when(orderItemRepo.sumQuantitiesByProduct()).thenReturn(List.of());
+		when(productRepo.findIndexRowsAfter(eq(0L), any())).thenAnswer(invocation -> {
+			// Commits landing after the batch was read, before it is applied
+			index.remove(2L);
+			index.index(product(3L, "Renamed watch"));
+			return List.of(row(1L, "Nokia phone"), row(2L, "Deleted phone"), row(3L, "Old watch"));
+		});
+		index.rebuild();
+
+		assertEquals(List.of("Nokia phone"), suggest("phone"));
+		assertEquals(List.of(), suggest("deleted"));
+		assertEquals(List.of(), suggest("old"));
+		assertEquals(List.of("Renamed watch"), suggest("watch"));
+	}
+
+	private static Object[] row(Long productId, String productName) {
+		return new Object[] { productId, productName, "Description", null, 100.0, 0.0, 100.0 };
+	}
+}